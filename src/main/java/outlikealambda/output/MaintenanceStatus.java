@@ -0,0 +1,37 @@
+package outlikealambda.output;
+
+import outlikealambda.traversal.TopicMaintenance;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+public class MaintenanceStatus {
+	// these fields need to be public for Neo4j serialization
+	public final Long run;
+	public final String mode;
+	public final Long topics;
+	public final Long done;
+	public final Long failed;
+	public final Long drifted;
+	public final Boolean finished;
+	public final Long elapsedMillis;
+	public final Double topicsPerSecond;
+	public final List<String> failures;
+
+	public MaintenanceStatus(TopicMaintenance.Status status, Map<Long, Throwable> failures) {
+		this.run = status.getRun();
+		this.mode = status.getMode().name();
+		this.topics = status.getTopics();
+		this.done = status.getDone();
+		this.failed = status.getFailed();
+		this.drifted = status.getDrifted();
+		this.finished = status.isFinished();
+		this.elapsedMillis = status.getElapsedMillis();
+		this.topicsPerSecond = status.getTopicsPerSecond();
+		this.failures = failures.entrySet().stream()
+				.map(failure -> String.format("topic %d: %s", failure.getKey(), failure.getValue()))
+				.collect(toList());
+	}
+}
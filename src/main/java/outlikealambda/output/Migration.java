@@ -0,0 +1,12 @@
+package outlikealambda.output;
+
+public class Migration {
+	// these fields need to be public for Neo4j serialization
+	public final Long people;
+	public final Long migrated;
+
+	public Migration(long people, long migrated) {
+		this.people = people;
+		this.migrated = migrated;
+	}
+}
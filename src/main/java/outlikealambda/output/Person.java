@@ -74,10 +74,6 @@ public class Person {
 	}
 
 	public static Person create(Node n, Relationship r, boolean isInfluencer) {
-		String name = (String) n.getProperty("name");
-
-		long id = (long) n.getProperty("id");
-
 		String relationship = Optional.ofNullable(r)
 				.map(Relationship::getType)
 				.map(RelationshipType::name)
@@ -87,6 +83,17 @@ public class Person {
 				.map(Relationships::getRank)
 				.orElse(-1L);
 
+		return create(n, relationship, rank, isInfluencer);
+	}
+
+	/**
+	 * For links which aren't a single relationship, like array encoded ranks
+	 */
+	public static Person create(Node n, String relationship, long rank, boolean isInfluencer) {
+		String name = (String) n.getProperty("name");
+
+		long id = (long) n.getProperty("id");
+
 		return new Person(name, id, relationship, rank, isInfluencer);
 	}
 }
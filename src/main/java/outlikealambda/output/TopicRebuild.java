@@ -0,0 +1,14 @@
+package outlikealambda.output;
+
+public class TopicRebuild {
+	// these fields need to be public for Neo4j serialization
+	public final Long people;
+	public final Long connected;
+	public final Long disjoint;
+
+	public TopicRebuild(long people, long connected, long disjoint) {
+		this.people = people;
+		this.connected = connected;
+		this.disjoint = disjoint;
+	}
+}
@@ -0,0 +1,25 @@
+package outlikealambda.output;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+public class TopicSummary {
+	// these fields need to be public for Neo4j serialization
+	public final Long topics;
+	public final Long skipped;
+	public final Long recomputed;
+	public final Long failed;
+	public final List<String> failures;
+
+	public TopicSummary(long topics, long skipped, Map<Long, Throwable> failures) {
+		this.topics = topics;
+		this.skipped = skipped;
+		this.recomputed = topics - skipped - failures.size();
+		this.failed = (long) failures.size();
+		this.failures = failures.entrySet().stream()
+				.map(failure -> String.format("topic %d: %s", failure.getKey(), failure.getValue()))
+				.collect(toList());
+	}
+}
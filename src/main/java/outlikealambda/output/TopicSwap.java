@@ -0,0 +1,20 @@
+package outlikealambda.output;
+
+import outlikealambda.traversal.ShadowRebuild;
+
+public class TopicSwap {
+	// these fields need to be public for Neo4j serialization
+	public final Long generation;
+	public final Long retired;
+	public final Long people;
+	public final Long connected;
+	public final Long disjoint;
+
+	public TopicSwap(ShadowRebuild.Swap swap) {
+		this.generation = swap.getGeneration();
+		this.retired = swap.getRetired();
+		this.people = swap.getPeople();
+		this.connected = swap.getConnected();
+		this.disjoint = swap.getDisjoint();
+	}
+}
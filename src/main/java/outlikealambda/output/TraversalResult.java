@@ -1,12 +1,12 @@
 package outlikealambda.output;
 
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import outlikealambda.traversal.Relationships;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
 public class TraversalResult {
@@ -25,26 +25,25 @@ public class TraversalResult {
 		this.opinion = Optional.ofNullable(opinion).orElseGet(Collections::emptyMap);
 	}
 
+	/**
+	 * @param friends in the order the results should be in
+	 * @param toPerson a friend or author, and whether it's the target
+	 */
 	public static Stream<TraversalResult> mergeIntoTraversalResults(
-			Map<Node, Relationship> friendLinks,
+			Collection<Node> friends,
+			BiFunction<Node, Boolean, Person> toPerson,
 			Map<Node, Node> friendAuthors,
 			Map<Node, Node> authorOpinions,
 			Optional<Node> target
 	) {
-		return friendLinks.entrySet().stream()
-				.sorted((friendAndRel1, friendAndRel2) ->
-						Relationships.rankComparator.compare(
-								friendAndRel1.getValue(),
-								friendAndRel2.getValue()))
-				.map(friendAndRel -> {
-					Node friend = friendAndRel.getKey();
-					Relationship friendRel = friendAndRel.getValue();
-					Person friendPerson = Person.create(friend, friendRel, target.map(friend::equals).orElse(false));
+		return friends.stream()
+				.map(friend -> {
+					Person friendPerson = toPerson.apply(friend, target.map(friend::equals).orElse(false));
 
 					return Optional.ofNullable(friendAuthors.get(friend))
 							.map(author -> new TraversalResult(
 									friendPerson,
-									Person.create(author, friendLinks.get(author)),
+									toPerson.apply(author, false),
 									authorOpinions.get(author).getAllProperties())
 							)
 							.orElseGet(() -> new TraversalResult(
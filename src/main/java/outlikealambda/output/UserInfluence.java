@@ -0,0 +1,11 @@
+package outlikealambda.output;
+
+public class UserInfluence {
+	public Long userId;
+	public Long influence;
+
+	public UserInfluence(long userId, long influence) {
+		this.userId = userId;
+		this.influence = influence;
+	}
+}
@@ -0,0 +1,67 @@
+package outlikealambda.procedure;
+
+import org.neo4j.graphdb.Node;
+import outlikealambda.traversal.ConnectivityManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads the operation maps passed to the *.batch.apply procedures, e.g.
+ *
+ * {op: 'target.set', userId: 1, targetId: 2}
+ * {op: 'target.clear', userId: 1}
+ * {op: 'opinion.set', userId: 1, opinionId: 3}
+ * {op: 'opinion.clear', userId: 1}
+ */
+final class BatchOperations {
+	private static final String OP = "op";
+	private static final String USER_ID = "userId";
+	private static final String TARGET_ID = "targetId";
+	private static final String OPINION_ID = "opinionId";
+
+	static void apply(
+			ConnectivityManager manager,
+			List<Map<String, Object>> operations,
+			Function<Long, Node> getPerson,
+			Function<Long, Node> getOpinion
+	) {
+		ConnectivityManager.Batch batch = manager.batch();
+
+		for (Map<String, Object> operation : operations) {
+			Node user = getPerson.apply(getId(operation, USER_ID));
+
+			switch (String.valueOf(operation.get(OP))) {
+				case "target.set":
+					batch.setTarget(user, getPerson.apply(getId(operation, TARGET_ID)));
+					break;
+				case "target.clear":
+					batch.clearTarget(user);
+					break;
+				case "opinion.set":
+					batch.setOpinion(user, getOpinion.apply(getId(operation, OPINION_ID)));
+					break;
+				case "opinion.clear":
+					batch.clearOpinion(user);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown batch operation: " + operation);
+			}
+		}
+
+		batch.apply();
+	}
+
+	private static long getId(Map<String, Object> operation, String key) {
+		Object id = operation.get(key);
+
+		if (!(id instanceof Number)) {
+			throw new IllegalArgumentException("Batch operation is missing " + key + ": " + operation);
+		}
+
+		return ((Number) id).longValue();
+	}
+
+	private BatchOperations() {}
+}
@@ -2,14 +2,25 @@ package outlikealambda.procedure;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.PerformsWrites;
 import org.neo4j.procedure.Procedure;
+import outlikealambda.output.TopicRebuild;
+import outlikealambda.output.TopicSummary;
+import outlikealambda.output.TopicSwap;
 import outlikealambda.traversal.ConnectivityManager;
 import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.RankedChange;
+import outlikealambda.traversal.ShadowRebuild;
+import outlikealambda.traversal.TopicWorkers;
+import outlikealambda.traversal.walk.Navigator;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
@@ -19,6 +30,10 @@ public class DirtyConnectivity {
 	@Context
 	public GraphDatabaseService gdb;
 
+	// not bound to the caller's transaction, so workers can open their own
+	@Context
+	public GraphDatabaseAPI db;
+
 	@Procedure("dirty.target.set")
 	@PerformsWrites
 	public void setTarget(
@@ -75,25 +90,180 @@ public class DirtyConnectivity {
 		manager.clearOpinion(user);
 	}
 
+	@Procedure("dirty.batch.apply")
+	@PerformsWrites
+	public void applyBatch(
+			@Name("topicId") long topicId,
+			@Name("operations") List<Map<String, Object>> operations
+	) {
+		ConnectivityManager manager = ConnectivityManager.dirtyWalker(topicId);
+
+		BatchOperations.apply(manager, operations, this::getPerson, this::getOpinion);
+	}
+
 	@Procedure("dirty.ranked.set")
 	@PerformsWrites
-	public void setRanked(
+	public Stream<TopicSummary> setRanked(
 			@Name("userId") long userId,
 			@Name("ranked") List<Long> ranked
 	) {
-		ConnectivityManager.setRanked(
-				getPerson(userId),
+		List<Long> topicIds = lockTopics();
+		Node user = getPerson(userId);
+
+		RankedChange change = ConnectivityManager.setRanked(
+				user,
 				ranked.stream()
 						.map(this::getPerson)
 						.collect(toList())
 		);
 
+		return updateAffectedTopics(topicIds, user, change);
+	}
+
+	@Procedure("dirty.ranked.insert")
+	@PerformsWrites
+	public Stream<TopicSummary> insertRanked(
+			@Name("userId") long userId,
+			@Name("targetId") long targetId,
+			@Name("position") long position
+	) {
+		int at = checkPosition(position);
+		List<Long> topicIds = lockTopics();
 		Node user = getPerson(userId);
 
-		getTopics()
-				.map(Nodes.Fields::getId)
+		return updateAffectedTopics(
+				topicIds,
+				user,
+				ConnectivityManager.insertRanked(user, getPerson(targetId), at));
+	}
+
+	@Procedure("dirty.ranked.move")
+	@PerformsWrites
+	public Stream<TopicSummary> moveRanked(
+			@Name("userId") long userId,
+			@Name("targetId") long targetId,
+			@Name("position") long position
+	) {
+		int at = checkPosition(position);
+		List<Long> topicIds = lockTopics();
+		Node user = getPerson(userId);
+
+		return updateAffectedTopics(
+				topicIds,
+				user,
+				ConnectivityManager.moveRanked(user, getPerson(targetId), at));
+	}
+
+	@Procedure("dirty.ranked.remove")
+	@PerformsWrites
+	public Stream<TopicSummary> removeRanked(
+			@Name("userId") long userId,
+			@Name("targetId") long targetId
+	) {
+		List<Long> topicIds = lockTopics();
+		Node user = getPerson(userId);
+
+		return updateAffectedTopics(
+				topicIds,
+				user,
+				ConnectivityManager.removeRanked(user, getPerson(targetId)));
+	}
+
+	/**
+	 * Same result as dirty.ranked.set, but each topic is recomputed in its own
+	 * transaction, on up to `threads` workers.  The ranked change is committed
+	 * first, independently of the caller's transaction: it stays committed if
+	 * the caller's transaction rolls back, and can't be made after writes in
+	 * the same transaction (see TopicWorkers.runAlone).
+	 */
+	@Procedure("dirty.ranked.set.parallel")
+	@PerformsWrites
+	public Stream<TopicSummary> setRankedParallel(
+			@Name("userId") long userId,
+			@Name("ranked") List<Long> ranked,
+			@Name("threads") long threads
+	) {
+		TopicWorkers workers = new TopicWorkers(db, TopicWorkers.threads(threads));
+
+		// gdb only works on the calling thread, so workers look nodes up through db
+		Function<Long, Node> getWorkerPerson = id -> db.findNode(Nodes.Labels.PERSON, Nodes.Fields.ID, id);
+
+		List<Long> topicIds = getTopicIds();
+
+		// decided against the connections as they were before the change
+		List<Long> affected = workers.runAlone(() -> {
+			ShadowRebuild.lockForChange(db, topicIds);
+
+			return ConnectivityManager.affectedTopics(
+					ConnectivityManager.setRanked(
+							getWorkerPerson.apply(userId),
+							ranked.stream()
+									.map(getWorkerPerson)
+									.collect(toList())),
+					topicIds);
+		});
+
+		Map<Long, Throwable> failures = workers.forEachTopic(
+				affected,
+				topicId -> ConnectivityManager.dirtyWalker(topicId).updateConnectivity(getWorkerPerson.apply(userId))
+		);
+
+		return Stream.of(new TopicSummary(topicIds.size(), topicIds.size() - affected.size(), failures));
+	}
+
+	/**
+	 * Recomputes every Person's connection in the topic from scratch; see
+	 * ConnectivityManager.rebuild
+	 */
+	@Procedure("dirty.topic.rebuild")
+	@PerformsWrites
+	public Stream<TopicRebuild> rebuildTopic(
+			@Name("topicId") long topicId
+	) {
+		List<Node> people = ConnectivityManager.rebuild(gdb, topicId);
+
+		Navigator navigator = new Navigator(topicId);
+
+		return Stream.of(new TopicRebuild(
+				people.size(),
+				people.stream().filter(navigator::isConnected).count(),
+				people.stream().filter(navigator::isDisjoint).count()));
+	}
+
+	/**
+	 * Same result as dirty.topic.rebuild, but readers keep seeing the old
+	 * connections until the rebuilt ones are committed, then see only those;
+	 * see ShadowRebuild.  Commits independently of the caller's transaction.
+	 */
+	@Procedure("dirty.topic.rebuild.swap")
+	@PerformsWrites
+	public Stream<TopicSwap> rebuildAndSwapTopic(
+			@Name("topicId") long topicId
+	) {
+		return Stream.of(new TopicSwap(new ShadowRebuild(db).rebuild(topicId)));
+	}
+
+	/**
+	 * Topics where the user walks a manual or authored connection, or where
+	 * the change doesn't reach past the user's current connection, are skipped
+	 */
+	private Stream<TopicSummary> updateAffectedTopics(List<Long> topicIds, Node user, RankedChange change) {
+		List<Long> affected = ConnectivityManager.affectedTopics(change, topicIds);
+
+		affected.stream()
 				.map(ConnectivityManager::dirtyWalker)
 				.forEach(topicManager -> topicManager.updateConnectivity(user));
+
+		return Stream.of(new TopicSummary(topicIds.size(), topicIds.size() - affected.size(), Collections.emptyMap()));
+	}
+
+	// before the cast, which would wrap a long out of int range
+	private static int checkPosition(long position) {
+		if (position < 0 || position > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("position " + position + " is out of range");
+		}
+
+		return (int) position;
 	}
 
 	private Node getPerson(long userId) {
@@ -104,7 +274,21 @@ public class DirtyConnectivity {
 		return gdb.findNode(Nodes.Labels.OPINION, Nodes.Fields.ID, opinionId);
 	}
 
-	private Stream<Node> getTopics() {
-		return gdb.findNodes(Nodes.Labels.TOPIC).stream();
+	/**
+	 * A ranked change may be walked in any topic, so all of them are locked
+	 * before it's made; see ShadowRebuild.lockForChange
+	 */
+	private List<Long> lockTopics() {
+		List<Long> topicIds = getTopicIds();
+
+		ShadowRebuild.lockForChange(gdb, topicIds);
+
+		return topicIds;
+	}
+
+	private List<Long> getTopicIds() {
+		return gdb.findNodes(Nodes.Labels.TOPIC).stream()
+				.map(Nodes.Fields::getId)
+				.collect(toList());
 	}
 }
@@ -0,0 +1,50 @@
+package outlikealambda.procedure;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.PerformsWrites;
+import org.neo4j.procedure.Procedure;
+import outlikealambda.output.MaintenanceStatus;
+import outlikealambda.traversal.TopicMaintenance;
+import outlikealambda.traversal.TopicWorkers;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds or verifies every topic at once; see TopicMaintenance
+ */
+public class Maintenance {
+	@Context
+	public GraphDatabaseService gdb;
+
+	// not bound to the caller's transaction, so workers can open their own
+	@Context
+	public GraphDatabaseAPI db;
+
+	@Procedure("topics.maintain")
+	@PerformsWrites
+	public Stream<MaintenanceStatus> maintain(
+			@Name("mode") String mode,
+			@Name("threads") long threads
+	) {
+		Map<Long, Throwable> failures = new TopicMaintenance(db, TopicWorkers.threads(threads))
+				.run(TopicMaintenance.Mode.valueOf(mode));
+
+		return TopicMaintenance.status(gdb)
+				.map(status -> new MaintenanceStatus(status, failures))
+				.map(Stream::of)
+				.orElseGet(Stream::empty);
+	}
+
+	@Procedure("topics.maintain.status")
+	public Stream<MaintenanceStatus> status() {
+		return TopicMaintenance.status(gdb)
+				.map(status -> new MaintenanceStatus(status, Collections.emptyMap()))
+				.map(Stream::of)
+				.orElseGet(Stream::empty);
+	}
+}
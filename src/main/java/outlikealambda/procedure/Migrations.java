@@ -0,0 +1,91 @@
+package outlikealambda.procedure;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.PerformsWrites;
+import org.neo4j.procedure.Procedure;
+import outlikealambda.output.Migration;
+import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.Relationships;
+import outlikealambda.traversal.ShadowRebuild;
+import outlikealambda.traversal.TopicEncoding;
+import outlikealambda.traversal.TopicRelationships;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Moves every Person between the ranked list encodings (see
+ * Relationships.isArrayEncoded), or a topic between topic encodings (see
+ * TopicEncoding).  Connections don't change, so no topic needs recomputing
+ * afterwards.
+ */
+public class Migrations {
+	@Context
+	public GraphDatabaseService gdb;
+
+	@Procedure("ranked.encode.array")
+	@PerformsWrites
+	public Stream<Migration> toArrayEncoding() {
+		return migrate(Relationships::toArrayEncoding);
+	}
+
+	@Procedure("ranked.encode.relationships")
+	@PerformsWrites
+	public Stream<Migration> toRelationshipEncoding() {
+		return migrate(Relationships::toRelationshipEncoding);
+	}
+
+	/**
+	 * Rewrites every MANUAL, AUTHORED and CONNECTED relationship of the topic
+	 * into the encoding, and records it on the Topic node.  Only the live
+	 * generation's CONNECTED are rewritten; see TopicEncoding.generation.
+	 */
+	@Procedure("topic.encode")
+	@PerformsWrites
+	public Stream<Migration> encodeTopic(
+			@Name("topicId") long topicId,
+			@Name("encoding") String encoding
+	) {
+		Node topic = Optional.ofNullable(gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId))
+				.orElseThrow(() -> new IllegalArgumentException("no topic with id " + topicId));
+
+		ShadowRebuild.lockForChange(gdb, topicId);
+
+		long generation = TopicEncoding.generation(gdb, topicId);
+
+		TopicRelationships from = new TopicRelationships(TopicEncoding.of(gdb, topicId), topicId, generation);
+		TopicRelationships to = new TopicRelationships(TopicEncoding.valueOf(encoding), topicId, generation);
+
+		if (from.getEncoding() == to.getEncoding()) {
+			return Stream.of(new Migration(getPeople().size(), 0));
+		}
+
+		Stream<Migration> migration = migrate(person -> from.reencodeOut(person, to) > 0);
+
+		topic.setProperty(TopicEncoding.KEY, to.getEncoding().name());
+
+		return migration;
+	}
+
+	private Stream<Migration> migrate(Predicate<Node> migration) {
+		List<Node> people = getPeople();
+
+		long migrated = people.stream()
+				.filter(migration)
+				.count();
+
+		return Stream.of(new Migration(people.size(), migrated));
+	}
+
+	private List<Node> getPeople() {
+		return gdb.findNodes(Nodes.Labels.PERSON).stream()
+				.collect(toList());
+	}
+}
@@ -5,11 +5,15 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Name;
+import org.neo4j.procedure.PerformsWrites;
 import org.neo4j.procedure.Procedure;
 import outlikealambda.output.Friend;
 import outlikealambda.output.FriendAuthor;
 import outlikealambda.output.Influence;
+import outlikealambda.output.Person;
 import outlikealambda.output.TraversalResult;
+import outlikealambda.output.UserInfluence;
+import outlikealambda.traversal.InfluenceIndex;
 import outlikealambda.traversal.Nodes;
 import outlikealambda.traversal.Relationships;
 import outlikealambda.traversal.walk.Navigator;
@@ -18,9 +22,12 @@ import outlikealambda.utils.Traversals;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -39,10 +46,65 @@ public class Traverse {
 		Node user = getPerson(userId);
 		Navigator navigator = new Navigator(topicId);
 
-		return Stream.of(Traversals.measureInfluence(navigator, user))
+		return Stream.of(navigator.getInfluence(user))
 				.map(Influence::new);
 	}
 
+	@Procedure("measure.influence.all")
+	public Stream<UserInfluence> measureInfluenceAll(
+			@Name("topicId") long topicId
+	) {
+		return measureInfluence(new Navigator(topicId), getPeople());
+	}
+
+	@Procedure("measure.influence.many")
+	public Stream<UserInfluence> measureInfluenceMany(
+			@Name("topicId") long topicId,
+			@Name("userIds") List<Long> userIds
+	) {
+		List<Node> users = userIds.stream()
+				.map(this::getPerson)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		return measureInfluence(new Navigator(topicId), users);
+	}
+
+	@Procedure("measure.influence.top")
+	public Stream<UserInfluence> measureInfluenceTop(
+			@Name("topicId") long topicId,
+			@Name("k") long k
+	) {
+		Navigator navigator = new Navigator(topicId);
+
+		return new InfluenceIndex(topicId, navigator.getGeneration(gdb)).top(gdb, (int) Math.min(k, Integer.MAX_VALUE)).stream()
+				.map(author -> new UserInfluence(Nodes.Fields.getId(author), navigator.getInfluence(author)));
+	}
+
+	@Procedure("measure.influence.seed")
+	@PerformsWrites
+	public void seedInfluence(
+			@Name("topicId") long topicId
+	) {
+		seed(new Navigator(topicId), getPeople());
+	}
+
+	static void seed(Navigator navigator, List<Node> people) {
+		Map<Node, Long> influence = Traversals.measureInfluence(navigator, people);
+
+		navigator.beginCascade();
+		try {
+			influence.forEach(navigator::seed);
+		} finally {
+			navigator.endCascade();
+		}
+	}
+
+	private static Stream<UserInfluence> measureInfluence(Navigator navigator, List<Node> users) {
+		return Traversals.measureInfluence(navigator, users).entrySet().stream()
+				.map(entry -> new UserInfluence(Nodes.Fields.getId(entry.getKey()), entry.getValue()));
+	}
+
 	@Procedure("friend.author.opinion")
 	public Stream<TraversalResult> friendAuthorOpinion(
 			@Name("userId") long userId,
@@ -51,14 +113,10 @@ public class Traverse {
 		Node user = getPerson(userId);
 		Navigator navigator = new Navigator(topicId);
 
-		Map<Node, Relationship> neighborRelationships = navigator.getRankedAndManualOut(user)
-				.collect(toMap(
-						Relationship::getEndNode,
-						Function.identity(),
-						(first, second) -> Relationships.Types.ranked().equals(first.getType()) ? first : second
-				));
+		Map<Node, Long> ranks = Relationships.getRanks(user);
+		Map<Node, List<String>> neighborLinks = getNeighborLinks(navigator, user, ranks);
 
-		Map<Node, Node> neighborToAuthor = neighborRelationships.keySet().stream()
+		Map<Node, Node> neighborToAuthor = neighborLinks.keySet().stream()
 				.filter(navigator::isConnected)
 				.collect(toMap(
 						Function.identity(),
@@ -77,8 +135,18 @@ public class Traverse {
 				.map(navigator::getConnectionOut)
 				.map(Relationship::getEndNode);
 
+		// ranked wins over manual, as the first link
+		BiFunction<Node, Boolean, Person> toPerson = (n, isInfluencer) -> Person.create(
+				n,
+				Optional.ofNullable(neighborLinks.get(n))
+						.map(links -> links.get(0))
+						.orElse("NONE"),
+				ranks.getOrDefault(n, -1L),
+				isInfluencer);
+
 		return TraversalResult.mergeIntoTraversalResults(
-				neighborRelationships,
+				neighborLinks.keySet(),
+				toPerson,
 				neighborToAuthor,
 				authorOpinions,
 				currentTarget
@@ -112,32 +180,14 @@ public class Traverse {
 			this.isInfluencer = isInfluencer;
 		}
 
-		private static UserRelation create(Node self, List<Relationship> relationships, boolean isInfluencer) {
-			List<String> relationshipNames = new ArrayList<>();
-			long rank = -1;
-			boolean isRanked = false;
-			boolean isManual = false;
-
-			for (Relationship r: relationships) {
-				relationshipNames.add(r.getType().name());
-
-				if (isRanked(r)) {
-					isRanked = true;
-					rank = Relationships.getRank(r);
-				}
-
-				if (isManual(r)) {
-					isManual = true;
-				}
-			}
-
+		private static UserRelation create(Node self, List<String> relationshipNames, long rank, boolean isInfluencer) {
 			return new UserRelation(
 					(String) self.getProperty("name"),
 					(long) self.getProperty("id"),
 					relationshipNames,
 					rank,
-					isRanked,
-					isManual,
+					rank >= 0,
+					relationshipNames.stream().anyMatch(Traverse::isManual),
 					isInfluencer
 			);
 		}
@@ -162,8 +212,12 @@ public class Traverse {
 	) {
 		Node user = getPerson(userId);
 
-		return Relationships.getRankedOutgoing(user)
-				.map(r ->  UserRelation.create(r.getEndNode(), Collections.singletonList(r), false))
+		return Relationships.getRanks(user).entrySet().stream()
+				.map(ranked -> UserRelation.create(
+						ranked.getKey(),
+						Collections.singletonList(Relationships.Types.ranked().name()),
+						ranked.getValue(),
+						false))
 				.map(UserRelation::toMap)
 				.map(Friend::new);
 	}
@@ -183,14 +237,15 @@ public class Traverse {
 				.map(Relationship::getEndNode);
 
 		// find the users neighbors (ranked and/or manual connections)
-		Map<Node, List<Relationship>> directRelations = navigator.getRankedAndManualOut(user)
-				.collect(Collectors.groupingBy(Relationship::getEndNode));
+		Map<Node, Long> ranks = Relationships.getRanks(user);
+		Map<Node, List<String>> directRelations = getNeighborLinks(navigator, user, ranks);
 
 		Function <Node, UserRelation> getUserRelation = n -> UserRelation.create(
 				n,
 				Optional.of(n)
 						.map(directRelations::get)
 						.orElseGet(ArrayList::new),
+				ranks.getOrDefault(n, -1L),
 				maybeTarget.filter(n::equals).isPresent()
 		);
 
@@ -207,12 +262,36 @@ public class Traverse {
 				));
 	}
 
+	/**
+	 * The names of the relationships linking user to each of its neighbors;
+	 * ranked neighbors come first, in rank order, however their ranks are
+	 * encoded
+	 */
+	private static Map<Node, List<String>> getNeighborLinks(Navigator navigator, Node user, Map<Node, Long> ranks) {
+		Map<Node, List<String>> links = new LinkedHashMap<>();
+
+		ranks.keySet().forEach(ranked -> links.computeIfAbsent(ranked, n -> new ArrayList<>())
+				.add(Relationships.Types.ranked().name()));
+
+		navigator.getRankedAndManualOut(user)
+				.filter(r -> !isRanked(r))
+				.forEach(r -> links.computeIfAbsent(r.getEndNode(), n -> new ArrayList<>())
+						.add(r.getType().name()));
+
+		return links;
+	}
+
 	private static boolean isRanked(Relationship r) {
 		return Relationships.Types.ranked().equals(r.getType());
 	}
 
-	private static boolean isManual(Relationship r) {
-		return r.getType().name().startsWith("MANUAL");
+	private static boolean isManual(String relationshipName) {
+		return relationshipName.startsWith("MANUAL");
+	}
+
+	private List<Node> getPeople() {
+		return gdb.findNodes(Nodes.Labels.PERSON).stream()
+				.collect(Collectors.toList());
 	}
 
 	private Node getPerson(long userId) {
@@ -1,15 +1,32 @@
 package outlikealambda.traversal;
 
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import outlikealambda.traversal.TopicEncoding.Kind;
 import outlikealambda.traversal.unwind.BasicUnwinder;
+import outlikealambda.traversal.unwind.PrunedUnwinder;
 import outlikealambda.traversal.unwind.Unwinder;
 import outlikealambda.traversal.walk.CleanBlazer;
+import outlikealambda.traversal.walk.CompactNavigator;
 import outlikealambda.traversal.walk.DirtyBlazer;
+import outlikealambda.traversal.walk.KernelNavigator;
 import outlikealambda.traversal.walk.Navigator;
+import outlikealambda.utils.Traversals;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 
+import static java.util.stream.Collectors.toList;
+
 public interface ConnectivityManager {
 	void updateConnectivity(Node source);
 
@@ -21,37 +38,215 @@ public interface ConnectivityManager {
 
 	void clearOpinion(Node author);
 
-	// TODO: Only write relationships with changed ranks
-	static void setRanked(Node source, List<Node> ranked) {
-		Relationships.setRanked(source, ranked);
+	/**
+	 * Collects target/opinion changes, and runs a single connectivity
+	 * update over all of the changed nodes once applied.
+	 */
+	Batch batch();
+
+	interface Batch {
+		Batch setTarget(Node source, Node target);
+
+		Batch clearTarget(Node source);
+
+		Batch setOpinion(Node author, Node opinion);
+
+		Batch clearOpinion(Node author);
+
+		void apply();
+	}
+
+	/**
+	 * Writes only the ranks which changed; see Relationships.setRanked
+	 */
+	static RankedChange setRanked(Node source, List<Node> ranked) {
+		return Relationships.setRanked(source, ranked);
+	}
+
+	static RankedChange insertRanked(Node source, Node target, int position) {
+		return Relationships.insertRanked(source, target, position);
+	}
+
+	static RankedChange moveRanked(Node source, Node target, int position) {
+		return Relationships.moveRanked(source, target, position);
+	}
+
+	static RankedChange removeRanked(Node source, Node target) {
+		return Relationships.removeRanked(source, target);
+	}
+
+	/**
+	 * The topics, of those given, in which the ranked change may move its
+	 * source's connection; see Navigator.isAffectedBy.  In the others the
+	 * connection stays, but its position in the ranked list is rewritten,
+	 * since the list around it may have moved; see Navigator.reindex.
+	 */
+	static List<Long> affectedTopics(RankedChange change, List<Long> topicIds) {
+		List<Long> affected = new ArrayList<>();
+
+		for (long topicId : topicIds) {
+			Navigator nav = new Navigator(topicId);
+
+			if (nav.isAffectedBy(change)) {
+				affected.add(topicId);
+			} else {
+				nav.reindex(change);
+			}
+		}
+
+		return affected;
+	}
+
+	/**
+	 * Recomputes the connection state of every Person in the topic in one pass,
+	 * for when the maintained state can't be trusted (imports, repairs).
+	 *
+	 * Every state is cleared, then a clean walk starts from each person in id
+	 * order, over an in-memory snapshot of the topic; see CleanBlazer.rebuild.
+	 * Each node is walked once, so the pass is linear in the size of the
+	 * topic, and it is the walk CleanBlazer makes, so the result is the same.
+	 * Influence and authors are then counted afresh instead of carried from
+	 * counts which may have drifted.
+	 *
+	 * @return the people rebuilt, in id order
+	 */
+	static List<Node> rebuild(GraphDatabaseService gdb, long topicId) {
+		ShadowRebuild.lockForChange(gdb, topicId);
+
+		return rebuild(gdb, topicId, TopicEncoding.generation(gdb, topicId));
+	}
+
+	/**
+	 * Same as rebuild, into the given generation of the topic, live or not;
+	 * see ShadowRebuild
+	 */
+	static List<Node> rebuild(GraphDatabaseService gdb, long topicId, long generation) {
+		CompactNavigator nav = CompactNavigator.load(gdb, topicId, generation);
+		List<Node> people = getPeople(gdb);
+
+		nav.beginCascade();
+		try {
+			new CleanBlazer(nav).rebuild(people);
+		} finally {
+			nav.endCascade();
+		}
+
+		Map<Node, Long> influence = Traversals.measureInfluence(nav, people);
+
+		// in id order, like the connection writes, so concurrent rebuilds lock alike
+		nav.beginCascade();
+		try {
+			people.forEach(person -> nav.seed(person, influence.get(person)));
+		} finally {
+			nav.endCascade();
+		}
+
+		return people;
+	}
+
+	/**
+	 * The number of people in the topic whose connection state differs from
+	 * what rebuild would make it.  Makes the same walk, but the cascade holding
+	 * it is never ended, so nothing is written.
+	 */
+	static long countDrifted(GraphDatabaseService gdb, long topicId) {
+		long generation = TopicEncoding.generation(gdb, topicId);
+		CompactNavigator rebuilt = CompactNavigator.load(gdb, topicId, generation);
+		Navigator store = new Navigator(topicId, generation);
+		TopicRelationships relationships = new TopicRelationships(TopicEncoding.of(gdb, topicId), topicId, generation);
+		List<Node> people = getPeople(gdb);
+
+		rebuilt.beginCascade();
+		new CleanBlazer(rebuilt).rebuild(people);
+
+		// the stored connection is read directly, since a drifted state may not have one
+		return people.stream()
+				.filter(person -> store.isConnected(person) != rebuilt.isConnected(person)
+						|| store.isDisjoint(person) != rebuilt.isDisjoint(person)
+						|| (rebuilt.isConnected(person) && !Optional.ofNullable(relationships.getSingleOut(person, Kind.CONNECTED))
+								.map(Relationship::getEndNode)
+								.equals(Optional.of(rebuilt.getConnectedTarget(person)))))
+				.count();
+	}
+
+	static List<Node> getPeople(GraphDatabaseService gdb) {
+		return gdb.findNodes(Nodes.Labels.PERSON).stream()
+				.sorted(Comparator.comparingLong(Node::getId))
+				.collect(toList());
 	}
 
-	static ConnectivityManager create(Navigator nav, Consumer<Node> update) {
+	static ConnectivityManager create(Navigator nav, Consumer<Collection<Node>> update) {
 		return new ConnectivityManager() {
 			@Override
 			public void updateConnectivity(Node source) {
-				update.accept(source);
+				nav.lockForChanges(source.getGraphDatabase());
+				update.accept(Collections.singletonList(source));
 			}
 
 			@Override
 			public void setTarget(Node source, Node target) {
-				nav.setTarget(source, target);
-				update.accept(source);
+				batch().setTarget(source, target).apply();
 			}
 
 			@Override public void clearTarget(Node source) {
-				nav.setTarget(source, null);
-				update.accept(source);
+				batch().clearTarget(source).apply();
 			}
 
 			@Override public void setOpinion(Node author, Node opinion) {
-				nav.setOpinion(author, opinion);
-				update.accept(author);
+				batch().setOpinion(author, opinion).apply();
 			}
 
 			@Override public void clearOpinion(Node author) {
-				nav.setOpinion(author, null);
-				update.accept(author);
+				batch().clearOpinion(author).apply();
+			}
+
+			@Override
+			public Batch batch() {
+				return new Batch() {
+					// changes are written as they arrive, so later operations see
+					// earlier ones; the connectivity update waits for apply()
+					private final Set<Node> changed = new LinkedHashSet<>();
+
+					@Override
+					public Batch setTarget(Node source, Node target) {
+						lockOnce(source);
+						nav.setTarget(source, target);
+						changed.add(source);
+						return this;
+					}
+
+					@Override
+					public Batch clearTarget(Node source) {
+						return setTarget(source, null);
+					}
+
+					@Override
+					public Batch setOpinion(Node author, Node opinion) {
+						lockOnce(author);
+						nav.setOpinion(author, opinion);
+						changed.add(author);
+						return this;
+					}
+
+					@Override
+					public Batch clearOpinion(Node author) {
+						return setOpinion(author, null);
+					}
+
+					@Override
+					public void apply() {
+						if (!changed.isEmpty()) {
+							update.accept(changed);
+						}
+					}
+
+					// before the first change, so a rebuild can't start under the batch
+					private void lockOnce(Node changing) {
+						if (changed.isEmpty()) {
+							nav.lockForChanges(changing.getGraphDatabase());
+						}
+					}
+				};
 			}
 		};
 	}
@@ -66,10 +261,31 @@ public interface ConnectivityManager {
 
 		return ConnectivityManager.create(
 				nav,
-				node -> unwinder.unwind(node).forEach(blazer::go)
+				nodes -> nodes.forEach(node -> blazer.rewalk(unwinder.collect(node)))
+		);
+	}
+
+	/**
+	 * Same as unwindAndWalk, but only unwinds the upstream nodes whose walk
+	 * can change; see PrunedUnwinder.
+	 *
+	 * Opt-in: the clean procedures stay on unwindAndWalk, which verifies the
+	 * dirty walk, and so can't share the pruning it relies on.
+	 */
+	static ConnectivityManager prunedUnwindAndWalk(long topicId) {
+		Navigator nav = new Navigator(topicId);
+		Unwinder unwinder = new PrunedUnwinder(nav);
+		CleanBlazer blazer = new CleanBlazer(nav);
+
+		return ConnectivityManager.create(
+				nav,
+				nodes -> nodes.forEach(node -> blazer.rewalk(unwinder.collect(node)))
 		);
 	}
 
+	/**
+	 * All changed nodes seed a single cascade, sharing its processed set and queue
+	 */
 	static ConnectivityManager dirtyWalker(long topicId) {
 		Navigator nav = new Navigator(topicId);
 		DirtyBlazer blazer = new DirtyBlazer(nav);
@@ -79,4 +295,43 @@ public interface ConnectivityManager {
 				blazer::go
 		);
 	}
+
+	/**
+	 * Same as dirtyWalker, but walks over an in-memory snapshot of the topic.
+	 * Loading reads the whole topic, so this pays off for large batches and
+	 * rebuilds, and the manager should not outlive a ranked change.
+	 *
+	 * Opt-in: no procedure selects it, since each makes a single change per
+	 * call, and a load costs more than the walk it saves.  Rebuilds use the
+	 * same snapshot directly; see rebuild.
+	 */
+	static ConnectivityManager compactWalker(GraphDatabaseService gdb, long topicId) {
+		CompactNavigator nav = CompactNavigator.load(gdb, topicId);
+		DirtyBlazer blazer = new DirtyBlazer(nav);
+
+		return ConnectivityManager.create(
+				nav,
+				blazer::go
+		);
+	}
+
+	/**
+	 * Same as dirtyWalker, but each hop reads through the kernel API; see
+	 * KernelNavigator.  Like the transaction it reads, the manager belongs to
+	 * one thread.
+	 *
+	 * Opt-in: no procedure selects it.  Each read acquires a Statement of its
+	 * own, which costs more than the proxies it replaces; over
+	 * TraversalComparer.compareKernelRuntime it runs about a third slower than
+	 * dirtyWalker.
+	 */
+	static ConnectivityManager kernelWalker(GraphDatabaseService gdb, long topicId) {
+		KernelNavigator nav = KernelNavigator.create(gdb, topicId);
+		DirtyBlazer blazer = new DirtyBlazer(nav);
+
+		return ConnectivityManager.create(
+				nav,
+				blazer::go
+		);
+	}
 }
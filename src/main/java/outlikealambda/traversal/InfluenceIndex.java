@@ -0,0 +1,96 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.api.LegacyIndexHits;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.exceptions.legacyindex.LegacyIndexNotFoundKernelException;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The authors of a topic, ordered by influence.
+ *
+ * Navigator keeps an author's entry current as connections change, so
+ * reading the top k is a sorted index lookup rather than a walk of the topic.
+ */
+public final class InfluenceIndex {
+	private static final String KEY = "influence";
+
+	private final String name;
+
+	public InfluenceIndex(long topicId) {
+		this(topicId, 0);
+	}
+
+	// each generation of the topic has its own; see TopicEncoding.generation
+	public InfluenceIndex(long topicId, long generation) {
+		this.name = Nodes.Fields.influence(topicId, generation);
+	}
+
+	public void put(Node author, long influence) {
+		Index<Node> index = forNodes(author.getGraphDatabase());
+
+		index.remove(author, KEY);
+		index.add(author, KEY, ValueContext.numeric(influence));
+	}
+
+	public void remove(Node n) {
+		forNodes(n.getGraphDatabase()).remove(n, KEY);
+	}
+
+	/**
+	 * Up to k authors, most influential first; none if the index doesn't
+	 * exist yet.
+	 *
+	 * Opening a legacy index through the core API counts as a write, even
+	 * when it exists, so the query goes through the kernel's read operations
+	 * and callers only need a read transaction.
+	 */
+	public List<Node> top(GraphDatabaseService gdb, int k) {
+		List<Node> top = new ArrayList<>(k);
+
+		if (k < 1 || !gdb.index().existsForNodes(name)) {
+			return top;
+		}
+
+		QueryContext query = QueryContext.numericRange(KEY, 0L, Long.MAX_VALUE)
+				.sortNumeric(KEY, true)
+				.top(k);
+
+		try (
+				Statement statement = ((GraphDatabaseAPI) gdb).getDependencyResolver()
+						.resolveDependency(ThreadToStatementContextBridge.class)
+						.get();
+				LegacyIndexHits hits = statement.readOperations().nodeLegacyIndexQuery(name, query)
+		) {
+			while (hits.hasNext() && top.size() < k) {
+				top.add(gdb.getNodeById(hits.next()));
+			}
+		} catch (LegacyIndexNotFoundKernelException e) {
+			// dropped since the check, along with its generation
+			top.clear();
+		}
+
+		return top;
+	}
+
+	/**
+	 * Drops the whole index, if it exists
+	 */
+	public void delete(GraphDatabaseService gdb) {
+		if (gdb.index().existsForNodes(name)) {
+			forNodes(gdb).delete();
+		}
+	}
+
+	private Index<Node> forNodes(GraphDatabaseService gdb) {
+		return gdb.index().forNodes(name);
+	}
+}
@@ -15,23 +15,57 @@ public class Nodes {
 	public static class Fields {
 		public static String ID = "id";
 		private static String DISJOINT = "disjoint";
+		private static String INFLUENCE = "influence";
+		private static String AUTHOR = "author";
+		private static String STATE = "state";
+
+		// array encoded ranked lists; see Relationships.toArrayEncoding
+		public static String RANKED = "ranked";
+		public static String RANKED_BY = "rankedBy";
+
+		public static String influence(long topic) {
+			return influence(topic, 0);
+		}
+
+		public static String author(long topic) {
+			return author(topic, 0);
+		}
 
 		public static Long getId(Node node) {
 			return (Long) node.getProperty(ID);
 		}
 
-		public static boolean isDisjoint(Node node) {
-			return node.hasProperty(DISJOINT);
+		public static String state(long topic) {
+			return state(topic, 0);
+		}
+
+		// the keys of one generation of a topic's connection state; see TopicEncoding.generation
+
+		public static String influence(long topic, long generation) {
+			return generational(INFLUENCE, topic, generation);
+		}
+
+		public static String author(long topic, long generation) {
+			return generational(AUTHOR, topic, generation);
+		}
+
+		public static String state(long topic, long generation) {
+			return generational(STATE, topic, generation);
 		}
 
-		// todo: is removing faster or is setting to false?
-		// how does that affect isDisjoint?
-		public static void setDisjoint(Node node, boolean isDisjoint) {
-			if (isDisjoint) {
-				node.setProperty(DISJOINT, true);
-			} else {
-				node.removeProperty(DISJOINT);
-			}
+		// generation 0 keeps the names from before there were generations
+		public static String generational(String name, long topic, long generation) {
+			return generation == 0
+					? name + "_" + topic
+					: name + "_" + topic + "_" + generation;
+		}
+
+		/**
+		 * The topic-wide flag from before connection state was kept per
+		 * topic; only read, for nodes without a state in the topic
+		 */
+		public static boolean isDisjoint(Node node) {
+			return node.hasProperty(DISJOINT);
 		}
 
 		private Fields() {}
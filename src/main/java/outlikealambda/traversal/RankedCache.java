@@ -0,0 +1,187 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.kernel.impl.factory.GraphDatabaseFacade;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rank-ordered RANKED targets, by node id, shared by every topic and
+ * transaction on a database.  Each database has a cache of its own, created
+ * as the database starts (see RankedCacheExtension).
+ *
+ * Every commit which creates, deletes or re-ranks a RANKED relationship
+ * stamps the source with a new version as part of the commit; sources which
+ * have never changed share an implicit first one.  An entry is only used
+ * while its version matches the one the reading transaction sees, and is
+ * only stored if that version didn't change while the list was read, so
+ * uncommitted, rolled back or superseded lists never leak between
+ * transactions.  Deleting a target deletes its RANKED relationships, so
+ * that stamps the sources too.
+ *
+ * Relationships.setRanked also stamps the source as it rewrites the list,
+ * so the same transaction reads it back.  Lists changed some other way
+ * (Cypher, migrations) keep their version until the commit, so until then
+ * the transaction making the change can still be handed the old list,
+ * deleted targets included.
+ */
+final class RankedCache {
+	static final String VERSION = "rankedVersion";
+
+	// of sources which have never changed
+	private static final long UNVERSIONED = 0;
+
+	// per database; past this many, the least recently used entries are dropped
+	private static final int MAX_ENTRIES = 1 << 20;
+
+	// unique for the life of the plugin, so a version is never reused
+	private static final AtomicLong versions = new AtomicLong(System.nanoTime());
+
+	// by the database's own facade, rather than the one each procedure call is
+	// handed; a cache lives as long as its database
+	private static final Map<GraphDatabaseService, RankedCache> caches =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Map<Long, Entry> entries = Collections.synchronizedMap(
+			new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
+
+	private static final class Entry {
+		private final long version;
+		private final long[] targets;
+
+		private Entry(long version, long[] targets) {
+			this.version = version;
+			this.targets = targets;
+		}
+	}
+
+	static void invalidate(Node source) {
+		source.setProperty(VERSION, versions.incrementAndGet());
+
+		of(source.getGraphDatabase()).entries.remove(source.getId());
+	}
+
+	/**
+	 * The cached target ids, loading them if the entry is missing or stale
+	 */
+	static long[] get(Node source) {
+		long version = version(source);
+		Map<Long, Entry> entries = of(source.getGraphDatabase()).entries;
+		Entry entry = entries.get(source.getId());
+
+		if (entry != null && entry.version == version) {
+			return entry.targets;
+		}
+
+		long[] targets = Relationships.loadRankedTargets(source);
+
+		// a commit while the list was read may have changed it; left to the next read
+		if (version(source) == version) {
+			entries.put(source.getId(), new Entry(version, targets));
+		}
+
+		return targets;
+	}
+
+	private static long version(Node source) {
+		return (Long) source.getProperty(VERSION, UNVERSIONED);
+	}
+
+	/**
+	 * Called as the database starts (see RankedCacheExtension); otherwise the
+	 * cache is created on first use
+	 */
+	static void create(GraphDatabaseService gdb) {
+		of(gdb);
+	}
+
+	private static RankedCache of(GraphDatabaseService gdb) {
+		GraphDatabaseService database = ((GraphDatabaseAPI) gdb).getDependencyResolver()
+				.resolveDependency(GraphDatabaseFacade.class);
+
+		synchronized (caches) {
+			return caches.computeIfAbsent(database, RankedCache::register);
+		}
+	}
+
+	private static RankedCache register(GraphDatabaseService database) {
+		RankedCache cache = new RankedCache();
+
+		database.registerTransactionEventHandler(new Evictor(cache));
+
+		return cache;
+	}
+
+	/**
+	 * Stamps the sources a transaction changes the ranked list of with a new
+	 * version before it commits, while its relationships can still be read,
+	 * and drops their entries once it has
+	 */
+	private static final class Evictor implements TransactionEventHandler<Set<Long>> {
+		private final RankedCache cache;
+
+		private Evictor(RankedCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public Set<Long> beforeCommit(TransactionData data) {
+			Set<Node> sources = new HashSet<>();
+
+			data.createdRelationships().forEach(r -> addRankedSource(r, sources));
+			data.deletedRelationships().forEach(r -> addRankedSource(r, sources));
+
+			for (PropertyEntry<Relationship> assigned : data.assignedRelationshipProperties()) {
+				addRankedSource(assigned.entity(), sources);
+			}
+
+			Set<Long> changed = new HashSet<>();
+
+			for (Node source : sources) {
+				if (!data.isDeleted(source)) {
+					source.setProperty(VERSION, versions.incrementAndGet());
+				}
+
+				changed.add(source.getId());
+			}
+
+			data.deletedNodes().forEach(n -> changed.add(n.getId()));
+
+			return changed;
+		}
+
+		@Override
+		public void afterCommit(TransactionData data, Set<Long> changed) {
+			changed.forEach(cache.entries::remove);
+		}
+
+		@Override
+		public void afterRollback(TransactionData data, Set<Long> changed) {
+		}
+
+		private static void addRankedSource(Relationship r, Set<Node> sources) {
+			if (r.isType(Relationships.Types.ranked())) {
+				sources.add(r.getStartNode());
+			}
+		}
+	}
+
+	private RankedCache() {}
+}
@@ -0,0 +1,32 @@
+package outlikealambda.traversal;
+
+import org.neo4j.kernel.extension.KernelExtensionFactory;
+import org.neo4j.kernel.impl.spi.KernelContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+/**
+ * Creates the database's RankedCache as the database starts, before any
+ * transaction can commit.  A transaction event handler registered while
+ * others are committing fails their commits, and misses their changes.
+ */
+public class RankedCacheExtension extends KernelExtensionFactory<RankedCacheExtension.Dependencies> {
+	public interface Dependencies {
+		GraphDatabaseAPI getGraphDatabaseAPI();
+	}
+
+	public RankedCacheExtension() {
+		super("outlikealambda-ranked-cache");
+	}
+
+	@Override
+	public Lifecycle newInstance(KernelContext context, Dependencies dependencies) {
+		return new LifecycleAdapter() {
+			@Override
+			public void start() {
+				RankedCache.create(dependencies.getGraphDatabaseAPI());
+			}
+		};
+	}
+}
@@ -0,0 +1,64 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.Node;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a call to Relationships.setRanked changed: the ranked targets before
+ * and after, closest first, and which targets were added, removed, or kept
+ * with a new rank.
+ */
+public final class RankedChange {
+	private final Node source;
+	private final List<Node> previous;
+	private final List<Node> current;
+	private final List<Node> added;
+	private final List<Node> removed;
+	private final List<Node> moved;
+
+	RankedChange(
+			Node source,
+			List<Node> previous,
+			List<Node> current,
+			List<Node> added,
+			List<Node> removed,
+			List<Node> moved
+	) {
+		this.source = source;
+		this.previous = Collections.unmodifiableList(previous);
+		this.current = Collections.unmodifiableList(current);
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.moved = Collections.unmodifiableList(moved);
+	}
+
+	public Node getSource() {
+		return source;
+	}
+
+	public List<Node> getPrevious() {
+		return previous;
+	}
+
+	public List<Node> getCurrent() {
+		return current;
+	}
+
+	public List<Node> getAdded() {
+		return added;
+	}
+
+	public List<Node> getRemoved() {
+		return removed;
+	}
+
+	public List<Node> getMoved() {
+		return moved;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && moved.isEmpty();
+	}
+}
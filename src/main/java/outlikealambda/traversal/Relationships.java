@@ -1,17 +1,33 @@
 package outlikealambda.traversal;
 
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import outlikealambda.utils.Composables;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toList;
+
 public final class Relationships {
 	public final static class Types {
 		private static final String MANUAL = "MANUAL";
@@ -46,6 +62,9 @@ public final class Relationships {
 
 	public static String RANK = "rank";
 
+	// ids per rankedBy segment; see isArrayEncoded
+	private static final int RANKED_BY_SEGMENT = 512;
+
 	public static Function<Node, Relationship> getSingleOut(RelationshipType rt) {
 		return getSingle(rt, Direction.OUTGOING);
 	}
@@ -63,21 +82,415 @@ public final class Relationships {
 		setRelationshipOut(source, target, rt);
 	}
 
-	public static void setRanked(Node source, List<Node> rankedTargets) {
-		// clear all ranked relationships
+	/**
+	 * Rewrites source's ranked targets as the given list, closest first.
+	 *
+	 * Only the differences are written: relationships to removed targets are
+	 * deleted, added targets get new relationships, and kept targets have
+	 * their rank updated in place if it moved.  Nothing is written, and the
+	 * cache is left alone, if the list is unchanged.
+	 */
+	public static RankedChange setRanked(Node source, List<Node> rankedTargets) {
+		if (isArrayEncoded(source)) {
+			return setRankedArray(source, rankedTargets);
+		}
+
+		List<Relationship> existing = getRankedByRank(source).collect(toList());
+
+		Map<Node, Deque<Relationship>> byTarget = new HashMap<>();
+		existing.forEach(r -> byTarget.computeIfAbsent(r.getEndNode(), target -> new ArrayDeque<>()).add(r));
+
+		List<Node> added = new ArrayList<>();
+		List<Node> moved = new ArrayList<>();
+		Set<Relationship> kept = new HashSet<>();
+
+		for (int i = 0; i < rankedTargets.size(); i++) {
+			Node target = rankedTargets.get(i);
+			Relationship r = Optional.ofNullable(byTarget.get(target))
+					.map(Deque::poll)
+					.orElse(null);
+
+			if (r == null) {
+				source.createRelationshipTo(target, Types.RANKED_TYPE)
+						.setProperty(RANK, (long) i);
+				added.add(target);
+				continue;
+			}
+
+			kept.add(r);
+
+			if (getRank(r) != i) {
+				r.setProperty(RANK, (long) i);
+				moved.add(target);
+			}
+		}
+
+		List<Node> previous = new ArrayList<>();
+		List<Node> removed = new ArrayList<>();
+
+		for (Relationship r : existing) {
+			previous.add(r.getEndNode());
+
+			if (!kept.contains(r)) {
+				removed.add(r.getEndNode());
+				r.delete();
+			}
+		}
+
+		RankedChange change = new RankedChange(
+				source, previous, new ArrayList<>(rankedTargets), added, removed, moved);
+
+		if (!change.isEmpty()) {
+			RankedCache.invalidate(source);
+		}
+
+		return change;
+	}
+
+	/**
+	 * Ranks target at position, pushing the targets from there on back one
+	 */
+	public static RankedChange insertRanked(Node source, Node target, int position) {
+		List<Node> ranked = getRankedList(source);
+
+		if (ranked.contains(target)) {
+			throw new IllegalArgumentException("target is already ranked; move it instead");
+		}
+
+		checkPosition(position, ranked.size());
+		ranked.add(position, target);
+
+		return setRanked(source, ranked);
+	}
+
+	/**
+	 * Moves an already ranked target to position; only the targets between
+	 * its old and new positions change rank
+	 */
+	public static RankedChange moveRanked(Node source, Node target, int position) {
+		List<Node> ranked = getRankedList(source);
+
+		if (!ranked.remove(target)) {
+			throw new IllegalArgumentException("target isn't ranked; insert it instead");
+		}
+
+		checkPosition(position, ranked.size());
+		ranked.add(position, target);
+
+		return setRanked(source, ranked);
+	}
+
+	/**
+	 * Drops target from the ranked targets, pulling the ones behind it forward
+	 */
+	public static RankedChange removeRanked(Node source, Node target) {
+		List<Node> ranked = getRankedList(source);
+
+		if (!ranked.remove(target)) {
+			throw new IllegalArgumentException("target isn't ranked");
+		}
+
+		return setRanked(source, ranked);
+	}
+
+	private static List<Node> getRankedList(Node source) {
+		return getRankedTargets(source).collect(toList());
+	}
+
+	private static void checkPosition(int position, int size) {
+		if (position < 0 || position > size) {
+			throw new IllegalArgumentException(
+					String.format("position %d is outside of the %d ranked targets", position, size));
+		}
+	}
+
+	/**
+	 * The ranked targets of source, closest first.  A single property read
+	 * for array encoded sources; otherwise served from RankedCache.  Targets
+	 * deleted without being unranked first leave their id behind in an array
+	 * encoded list, or in a list cached before the deleting transaction
+	 * commits, and are skipped.
+	 */
+	public static Stream<Node> getRankedTargets(Node source) {
+		return existing(source.getGraphDatabase(), LongStream.of(getRankedTargetIds(source)));
+	}
+
+	/**
+	 * The array encoded sources which rank target; sources still using RANKED
+	 * relationships aren't included.  Sources deleted without being unranked
+	 * first leave their id behind, and are skipped.
+	 */
+	public static Stream<Node> getArrayRankedSources(Node target) {
+		return existing(target.getGraphDatabase(), IntStream.range(0, rankedBySegments(target))
+				.mapToObj(segment -> getIds(target, rankedByKey(segment)))
+				.flatMapToLong(LongStream::of));
+	}
+
+	// nothing unlinks a deleted node from the arrays which hold its id
+	private static Stream<Node> existing(GraphDatabaseService gdb, LongStream ids) {
+		return ids
+				.mapToObj(id -> {
+					try {
+						return gdb.getNodeById(id);
+					} catch (NotFoundException e) {
+						return null;
+					}
+				})
+				.filter(Objects::nonNull);
+	}
+
+	/**
+	 * The rank of each of source's ranked targets, closest first
+	 */
+	public static Map<Node, Long> getRanks(Node source) {
+		Map<Node, Long> ranks = new LinkedHashMap<>();
+
+		if (isArrayEncoded(source)) {
+			List<Node> targets = getRankedList(source);
+
+			for (int i = 0; i < targets.size(); i++) {
+				ranks.putIfAbsent(targets.get(i), (long) i);
+			}
+		} else {
+			getRankedByRank(source).forEach(r -> ranks.putIfAbsent(r.getEndNode(), getRank(r)));
+		}
+
+		return ranks;
+	}
+
+	/**
+	 * The ids of source's ranked targets, closest first.  The array may be
+	 * shared with RankedCache, so it must not be written to.
+	 */
+	public static long[] getRankedTargetIds(Node source) {
+		if (isArrayEncoded(source)) {
+			return getIds(source, Nodes.Fields.RANKED);
+		}
+
+		return RankedCache.get(source);
+	}
+
+	static long[] loadRankedTargets(Node source) {
+		return getRankedByRank(source)
+				.map(Relationship::getEndNode)
+				.mapToLong(Node::getId)
+				.toArray();
+	}
+
+	/**
+	 * Ranked lists are kept either as RANKED relationships carrying a rank, or
+	 * as the ids of the targets, in rank order, in a single long[] on the
+	 * source.  Array encoded targets keep the ids of the sources ranking them
+	 * in a second long[], so walking upstream doesn't need relationships.
+	 * That one is split into segments of at most RANKED_BY_SEGMENT ids, so
+	 * a rank edit rewrites at most two segments of the target, however many
+	 * sources rank it.
+	 *
+	 * Sources are encoded one way or the other independently; writes keep
+	 * whichever encoding the source has.
+	 */
+	public static boolean isArrayEncoded(Node source) {
+		return source.hasProperty(Nodes.Fields.RANKED);
+	}
+
+	/**
+	 * Moves source's ranked list out of its RANKED relationships and into the
+	 * array encoding
+	 *
+	 * @return false if source was already array encoded
+	 */
+	public static boolean toArrayEncoding(Node source) {
+		if (isArrayEncoded(source)) {
+			return false;
+		}
+
+		List<Node> targets = getRankedByRank(source)
+				.map(Relationship::getEndNode)
+				.collect(toList());
+
 		getRankedOutgoing(source).forEach(Relationship::delete);
 
-		// build all input ranked relationships
+		source.setProperty(Nodes.Fields.RANKED, toIds(targets));
+		targets.stream().distinct().forEach(target -> addRankedBy(target, source.getId()));
+
+		return true;
+	}
+
+	/**
+	 * Moves source's ranked list back out of the array encoding, into RANKED
+	 * relationships
+	 *
+	 * @return false if source already used relationships
+	 */
+	public static boolean toRelationshipEncoding(Node source) {
+		if (!isArrayEncoded(source)) {
+			return false;
+		}
+
+		List<Node> targets = getRankedList(source);
+
+		targets.stream().distinct().forEach(target -> removeRankedBy(target, source.getId()));
+		source.removeProperty(Nodes.Fields.RANKED);
+
+		setRanked(source, targets);
+
+		return true;
+	}
+
+	private static RankedChange setRankedArray(Node source, List<Node> rankedTargets) {
+		List<Node> previous = getRankedList(source);
+
+		Map<Node, Integer> previousRanks = new HashMap<>();
+		for (int i = 0; i < previous.size(); i++) {
+			previousRanks.putIfAbsent(previous.get(i), i);
+		}
+
+		Set<Node> current = new HashSet<>(rankedTargets);
+
+		List<Node> added = new ArrayList<>();
+		List<Node> moved = new ArrayList<>();
+		List<Node> removed = previous.stream()
+				.filter(target -> !current.contains(target))
+				.distinct()
+				.collect(toList());
+
+		Set<Node> seen = new HashSet<>();
+
 		for (int i = 0; i < rankedTargets.size(); i++) {
-			source.createRelationshipTo(rankedTargets.get(i), Types.RANKED_TYPE)
-					.setProperty(RANK, (long) i);
+			Node target = rankedTargets.get(i);
+			Integer previousRank = previousRanks.get(target);
+
+			if (!seen.add(target)) {
+				continue;
+			}
+
+			if (previousRank == null) {
+				added.add(target);
+			} else if (previousRank != i) {
+				moved.add(target);
+			}
+		}
+
+		long[] ids = toIds(rankedTargets);
+
+		if (!Arrays.equals(ids, getIds(source, Nodes.Fields.RANKED))) {
+			source.setProperty(Nodes.Fields.RANKED, ids);
+
+			added.forEach(target -> addRankedBy(target, source.getId()));
+			removed.forEach(target -> removeRankedBy(target, source.getId()));
 		}
+
+		return new RankedChange(
+				source, previous, new ArrayList<>(rankedTargets), added, removed, moved);
+	}
+
+	private static long[] toIds(List<Node> nodes) {
+		return nodes.stream().mapToLong(Node::getId).toArray();
+	}
+
+	private static long[] getIds(Node n, String key) {
+		return (long[]) n.getProperty(key, new long[0]);
+	}
+
+	/**
+	 * rankedBy, rankedBy.1, rankedBy.2...; every segment but the last is full
+	 * (or longer, if it was written before there were segments)
+	 */
+	private static String rankedByKey(int segment) {
+		return segment == 0 ? Nodes.Fields.RANKED_BY : Nodes.Fields.RANKED_BY + "." + segment;
+	}
+
+	private static int rankedBySegments(Node target) {
+		int segments = 0;
+
+		while (target.hasProperty(rankedByKey(segments))) {
+			segments++;
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Appends to the last segment, or starts a new one once it's full
+	 */
+	private static void addRankedBy(Node target, long sourceId) {
+		int segments = rankedBySegments(target);
+
+		for (int segment = 0; segment < segments; segment++) {
+			if (LongStream.of(getIds(target, rankedByKey(segment))).anyMatch(existing -> existing == sourceId)) {
+				return;
+			}
+		}
+
+		long[] last = segments == 0 ? new long[0] : getIds(target, rankedByKey(segments - 1));
+
+		if (segments > 0 && last.length < RANKED_BY_SEGMENT) {
+			long[] added = Arrays.copyOf(last, last.length + 1);
+			added[last.length] = sourceId;
+
+			target.setProperty(rankedByKey(segments - 1), added);
+		} else {
+			target.setProperty(rankedByKey(segments), new long[]{sourceId});
+		}
+	}
+
+	/**
+	 * Fills the hole with the last id of the last segment, so only the
+	 * segment holding sourceId and the last one are rewritten
+	 */
+	private static void removeRankedBy(Node target, long sourceId) {
+		int segments = rankedBySegments(target);
+
+		for (int segment = 0; segment < segments; segment++) {
+			long[] ids = getIds(target, rankedByKey(segment));
+			int position = indexOf(ids, sourceId);
+
+			if (position < 0) {
+				continue;
+			}
+
+			String lastKey = rankedByKey(segments - 1);
+			long[] last = segment == segments - 1 ? ids : getIds(target, lastKey);
+
+			if (segment != segments - 1) {
+				ids[position] = last[last.length - 1];
+				target.setProperty(rankedByKey(segment), ids);
+			} else {
+				last[position] = last[last.length - 1];
+			}
+
+			if (last.length == 1) {
+				target.removeProperty(lastKey);
+			} else {
+				target.setProperty(lastKey, Arrays.copyOf(last, last.length - 1));
+			}
+
+			return;
+		}
+	}
+
+	private static int indexOf(long[] ids, long id) {
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public static Stream<Relationship> getRankedByRank(Node source) {
+		return getRankedOutgoing(source).sorted(rankComparator);
 	}
 
 	public static Stream<Relationship> getRankedOutgoing(Node source) {
 		return Composables.goStream(source.getRelationships(Types.RANKED_TYPE, Direction.OUTGOING));
 	}
 
+	public static Stream<Relationship> getRankedIncoming(Node target) {
+		return Composables.goStream(target.getRelationships(Types.RANKED_TYPE, Direction.INCOMING));
+	}
+
 	public static Comparator<Relationship> rankComparator =
 			(left, right) -> getRank(left) < getRank(right) ? -1 : 1;
 
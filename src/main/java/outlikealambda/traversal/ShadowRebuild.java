@@ -0,0 +1,224 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.locking.ResourceTypes;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import outlikealambda.traversal.TopicEncoding.Kind;
+import outlikealambda.traversal.walk.Navigator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Rebuilds a topic (see ConnectivityManager.rebuild) without readers ever
+ * seeing it half done.
+ *
+ * The rebuild is written into a new generation of the topic, which nothing
+ * reads until it is made live; see TopicEncoding.generation.  That happens in
+ * the transaction which builds it, so readers see the old generation until it
+ * commits, and only the new one after.  The retired generation is then
+ * removed in the background, a chunk of people per transaction.
+ *
+ * The build holds an exclusive lock on the Topic node, and everything which
+ * changes the topic's live generation takes a shared one first (see
+ * lockForChange).  Changes committed before the build starts are in it;
+ * changes made while it runs wait for it, and are made to the new generation.
+ * Readers don't lock, so they never wait.
+ */
+public class ShadowRebuild {
+	// people whose retired state is removed per transaction
+	private static final int COLLECT_CHUNK = 1000;
+
+	// one for the whole database, so collections don't compete with each other
+	private static final ExecutorService COLLECTOR = Executors.newSingleThreadExecutor(work -> {
+		Thread collector = new Thread(work, "topic-generation-collector");
+		collector.setDaemon(true);
+
+		return collector;
+	});
+
+	private final GraphDatabaseService gdb;
+	private final TopicWorkers workers;
+
+	public ShadowRebuild(GraphDatabaseService gdb) {
+		this.gdb = gdb;
+		this.workers = new TopicWorkers(gdb, 1);
+	}
+
+	/**
+	 * Holds a shared lock on the topic's Topic node until the calling
+	 * transaction ends, so no rebuild of the topic can start building, or
+	 * swap, until then.  Anything changing the live generation takes it
+	 * before reading which generation is live.  Topics without a Topic node
+	 * can't be rebuilt, so aren't locked.
+	 */
+	public static void lockForChange(GraphDatabaseService gdb, long topicId) {
+		Node topic = gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId);
+
+		if (topic != null) {
+			try (Statement statement = statements(gdb).get()) {
+				statement.readOperations().acquireShared(ResourceTypes.NODE, topic.getId());
+			}
+		}
+	}
+
+	// the kernel's, since the facade a procedure is handed can't lock
+	private static ThreadToStatementContextBridge statements(GraphDatabaseService gdb) {
+		return ((GraphDatabaseAPI) gdb).getDependencyResolver()
+				.resolveDependency(ThreadToStatementContextBridge.class);
+	}
+
+	/**
+	 * Same as lockForChange, for each topic, in id order so that concurrent
+	 * changes to several topics lock alike
+	 */
+	public static void lockForChange(GraphDatabaseService gdb, List<Long> topicIds) {
+		topicIds.stream()
+				.sorted()
+				.forEach(topicId -> lockForChange(gdb, topicId));
+	}
+
+	/**
+	 * Rebuilds the topic into a new generation and makes it live, in one
+	 * transaction, then starts collecting the one it replaced.  If the build
+	 * fails, it is rolled back and the live generation is untouched.
+	 */
+	public Swap rebuild(long topicId) {
+		Swap built = workers.runAlone(() -> buildAndSwap(topicId));
+
+		built.collected = collect(topicId, built.retired);
+
+		return built;
+	}
+
+	private Swap buildAndSwap(long topicId) {
+		Node topic = getTopic(topicId);
+
+		try (Statement statement = statements(gdb).get()) {
+			statement.readOperations().acquireExclusive(ResourceTypes.NODE, topic.getId());
+		}
+
+		long live = (long) topic.getProperty(TopicEncoding.GENERATION, 0L);
+		long shadow = live + 1;
+
+		List<Node> people = ConnectivityManager.rebuild(gdb, topicId, shadow);
+		Navigator built = new Navigator(topicId, shadow);
+
+		topic.setProperty(TopicEncoding.GENERATION, shadow);
+
+		return new Swap(
+				shadow,
+				live,
+				people.size(),
+				people.stream().filter(built::isConnected).count(),
+				people.stream().filter(built::isDisjoint).count());
+	}
+
+	/**
+	 * Removes the connection state of the generation in the background: the
+	 * state, influence and author properties, the CONNECTED relationships and
+	 * the influence index.  Nothing else is kept per generation.
+	 */
+	private Future<?> collect(long topicId, long generation) {
+		return COLLECTOR.submit(() -> {
+			List<Long> people = workers.runAlone(() -> ConnectivityManager.getPeople(gdb).stream()
+					.map(Node::getId)
+					.collect(toList()));
+
+			TopicEncoding encoding = workers.runAlone(() -> TopicEncoding.of(gdb, topicId));
+			TopicRelationships relationships = new TopicRelationships(encoding, topicId, generation);
+			String[] keys = {
+					Nodes.Fields.state(topicId, generation),
+					Nodes.Fields.influence(topicId, generation),
+					Nodes.Fields.author(topicId, generation)
+			};
+
+			for (int from = 0; from < people.size(); from += COLLECT_CHUNK) {
+				List<Long> chunk = people.subList(from, Math.min(from + COLLECT_CHUNK, people.size()));
+
+				workers.inTransaction(() -> chunk.forEach(id -> collect(id, relationships, keys)));
+			}
+
+			workers.inTransaction(() -> new InfluenceIndex(topicId, generation).delete(gdb));
+		});
+	}
+
+	private void collect(long personId, TopicRelationships relationships, String[] keys) {
+		Node person;
+
+		try {
+			person = gdb.getNodeById(personId);
+		} catch (NotFoundException e) {
+			// deleted since the ids were read
+			return;
+		}
+
+		for (String key : keys) {
+			person.removeProperty(key);
+		}
+
+		relationships.getOut(person, Kind.CONNECTED)
+				.collect(toList())
+				.forEach(Relationship::delete);
+	}
+
+	private Node getTopic(long topicId) {
+		return Optional.ofNullable(gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId))
+				.orElseThrow(() -> new IllegalArgumentException("no topic with id " + topicId));
+	}
+
+	public static final class Swap {
+		private final long generation;
+		private final long retired;
+		private final long people;
+		private final long connected;
+		private final long disjoint;
+
+		private Future<?> collected;
+
+		private Swap(long generation, long retired, long people, long connected, long disjoint) {
+			this.generation = generation;
+			this.retired = retired;
+			this.people = people;
+			this.connected = connected;
+			this.disjoint = disjoint;
+		}
+
+		// the generation now live
+		public long getGeneration() {
+			return generation;
+		}
+
+		// the generation it replaced, being collected
+		public long getRetired() {
+			return retired;
+		}
+
+		public long getPeople() {
+			return people;
+		}
+
+		public long getConnected() {
+			return connected;
+		}
+
+		public long getDisjoint() {
+			return disjoint;
+		}
+
+		// done once the retired generation is gone
+		public Future<?> getCollected() {
+			return collected;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.Optional;
+
+/**
+ * How one topic's MANUAL, AUTHORED and CONNECTED relationships are told apart
+ * from another's.
+ *
+ * PER_TYPE gives each topic its own relationship types (MANUAL_42, ...), so a
+ * read only sees the topic's relationships, but every topic adds three types.
+ * SHARED uses one type per kind (MANUAL, ...) with the topic id in a `topic`
+ * property: there are only three types, and reads filter a node's
+ * relationships of a kind by topic.
+ *
+ * A topic's encoding is kept on its Topic node; topics without one, or
+ * without a Topic node, are PER_TYPE.
+ *
+ * CONNECTED relationships, like the rest of a topic's connection state, also
+ * belong to a generation (see generation).  Generation 0 is encoded as above;
+ * later ones add the generation to the CONNECTED type name (PER_TYPE) or in a
+ * `generation` property (SHARED).
+ */
+public enum TopicEncoding {
+	PER_TYPE {
+		@Override
+		public RelationshipType type(Kind kind, long topicId, long generation) {
+			return kind.perType(topicId, generation);
+		}
+
+		@Override
+		public boolean isInTopic(Relationship r, long topicId, long generation) {
+			return true;
+		}
+
+		@Override
+		public Relationship create(Node source, Node target, Kind kind, long topicId, long generation) {
+			return source.createRelationshipTo(target, type(kind, topicId, generation));
+		}
+	},
+
+	SHARED {
+		@Override
+		public RelationshipType type(Kind kind, long topicId, long generation) {
+			return kind.shared;
+		}
+
+		@Override
+		public boolean isInTopic(Relationship r, long topicId, long generation) {
+			return Long.valueOf(topicId).equals(r.getProperty(TOPIC, null))
+					&& (!r.isType(Kind.CONNECTED.shared) || generation == (long) r.getProperty(GENERATION, 0L));
+		}
+
+		@Override
+		public Relationship create(Node source, Node target, Kind kind, long topicId, long generation) {
+			Relationship r = source.createRelationshipTo(target, type(kind, topicId, generation));
+			r.setProperty(TOPIC, topicId);
+
+			if (kind.isGenerational() && generation != 0) {
+				r.setProperty(GENERATION, generation);
+			}
+
+			return r;
+		}
+	};
+
+	public enum Kind {
+		MANUAL,
+		AUTHORED,
+		CONNECTED;
+
+		private final RelationshipType shared = RelationshipType.withName(name());
+
+		// only connections are computed; manual and authored are the same in every generation
+		private boolean isGenerational() {
+			return this == CONNECTED;
+		}
+
+		private RelationshipType perType(long topicId, long generation) {
+			return RelationshipType.withName(
+					Nodes.Fields.generational(name(), topicId, isGenerational() ? generation : 0));
+		}
+	}
+
+	public static final String TOPIC = "topic";
+
+	// the Topic node property naming the encoding
+	public static final String KEY = "encoding";
+
+	// the Topic node property holding the live generation, and the SHARED CONNECTED property
+	public static final String GENERATION = "generation";
+
+	/**
+	 * The relationship type a relationship of kind has, in the topic
+	 */
+	public abstract RelationshipType type(Kind kind, long topicId, long generation);
+
+	/**
+	 * Whether a relationship of type(kind, topicId, generation) belongs to
+	 * the topic and generation
+	 */
+	public abstract boolean isInTopic(Relationship r, long topicId, long generation);
+
+	public abstract Relationship create(Node source, Node target, Kind kind, long topicId, long generation);
+
+	public RelationshipType type(Kind kind, long topicId) {
+		return type(kind, topicId, 0);
+	}
+
+	public boolean isInTopic(Relationship r, long topicId) {
+		return isInTopic(r, topicId, 0);
+	}
+
+	public Relationship create(Node source, Node target, Kind kind, long topicId) {
+		return create(source, target, kind, topicId, 0);
+	}
+
+	public static TopicEncoding of(GraphDatabaseService gdb, long topicId) {
+		return Optional.ofNullable(gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId))
+				.map(topic -> (String) topic.getProperty(KEY, null))
+				.map(TopicEncoding::valueOf)
+				.orElse(PER_TYPE);
+	}
+
+	/**
+	 * The generation of the topic's connection state which is live, kept on
+	 * its Topic node; 0 for topics which have never been swapped (see
+	 * ShadowRebuild)
+	 */
+	public static long generation(GraphDatabaseService gdb, long topicId) {
+		return Optional.ofNullable(gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId))
+				.map(topic -> (long) topic.getProperty(GENERATION, 0L))
+				.orElse(0L);
+	}
+}
@@ -0,0 +1,243 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.locking.ResourceTypes;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Rebuilds (see ConnectivityManager.rebuild) or verifies (see
+ * ConnectivityManager.countDrifted) every topic in the database, on a
+ * TopicWorkers pool, each topic in its own transaction.
+ *
+ * Progress lives in the database.  The run is recorded on a single
+ * Maintenance node, and each Topic node is stamped with the run in the same
+ * transaction as the topic's own changes.  A run which didn't finish (it was
+ * interrupted, or some topics failed) is picked up by the next run of the same
+ * mode, which skips the topics already stamped.  Runs are started one at a
+ * time, so concurrent runs share the one Maintenance node.
+ */
+public class TopicMaintenance {
+	public enum Mode {
+		REBUILD,
+		VERIFY
+	}
+
+	public static final Label JOB = Label.label("Maintenance");
+
+	// on the Maintenance node
+	private static final String RUN = "run";
+	private static final String MODE = "mode";
+	private static final String STARTED = "started";
+	private static final String DONE_AT_START = "doneAtStart";
+	private static final String FINISHED = "finished";
+	private static final String ENDED = "ended";
+	private static final String FAILED = "failed";
+
+	// on each Topic node
+	private static final String MAINTAINED = "maintainedRun";
+	private static final String DRIFTED = "drifted";
+
+	private final GraphDatabaseService gdb;
+	private final TopicWorkers workers;
+
+	public TopicMaintenance(GraphDatabaseService gdb, int threads) {
+		this.gdb = gdb;
+		this.workers = new TopicWorkers(gdb, threads);
+	}
+
+	/**
+	 * Maintains every topic not yet stamped with the current run, starting a
+	 * new run unless an unfinished one of the same mode can be resumed.
+	 *
+	 * @return the failure of each topic which could not be committed, by topic id
+	 */
+	public Map<Long, Throwable> run(Mode mode) {
+		long run = workers.runAlone(() -> startOrResume(mode));
+
+		List<Long> remaining = workers.runAlone(() -> getTopics(gdb).stream()
+				.filter(topic -> !isMaintainedIn(topic, run))
+				.map(Nodes.Fields::getId)
+				.collect(toList()));
+
+		Map<Long, Throwable> failures = workers.forEachTopic(remaining, topicId -> maintain(mode, run, topicId));
+
+		workers.runAlone(() -> end(failures.size()));
+
+		return failures;
+	}
+
+	private long startOrResume(Mode mode) {
+		lockJob();
+
+		Node job = getJob(gdb).orElseGet(() -> gdb.createNode(JOB));
+
+		long run = (long) job.getProperty(RUN, 0L);
+		boolean resumable = run > 0
+				&& !(boolean) job.getProperty(FINISHED, false)
+				&& mode.name().equals(job.getProperty(MODE, null));
+
+		if (!resumable) {
+			run++;
+		}
+
+		long runId = run;
+
+		job.setProperty(RUN, runId);
+		job.setProperty(MODE, mode.name());
+		job.setProperty(FINISHED, false);
+		job.setProperty(STARTED, System.currentTimeMillis());
+		job.setProperty(DONE_AT_START, getTopics(gdb).stream()
+				.filter(topic -> isMaintainedIn(topic, runId))
+				.count());
+		job.removeProperty(ENDED);
+		job.removeProperty(FAILED);
+
+		return runId;
+	}
+
+	/**
+	 * Until the transaction ends, so concurrent runs can't each find no
+	 * Maintenance node and create one.  There's no node to lock before the
+	 * first run, so the lock is on the graph's properties, which nothing else
+	 * here writes.
+	 */
+	private void lockJob() {
+		try (Statement statement = ((GraphDatabaseAPI) gdb).getDependencyResolver()
+				.resolveDependency(ThreadToStatementContextBridge.class)
+				.get()) {
+			statement.readOperations().acquireExclusive(ResourceTypes.GRAPH_PROPS, ResourceTypes.graphPropertyResource());
+		}
+	}
+
+	private void maintain(Mode mode, long run, long topicId) {
+		long drifted = 0;
+
+		if (mode == Mode.VERIFY) {
+			drifted = ConnectivityManager.countDrifted(gdb, topicId);
+		} else {
+			ConnectivityManager.rebuild(gdb, topicId);
+		}
+
+		Node topic = gdb.findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, topicId);
+
+		topic.setProperty(MAINTAINED, run);
+		topic.setProperty(DRIFTED, drifted);
+	}
+
+	private Node end(int failed) {
+		Node job = getJob(gdb)
+				.orElseThrow(() -> new IllegalStateException("the Maintenance node went missing during a run"));
+
+		job.setProperty(FINISHED, failed == 0);
+		job.setProperty(ENDED, System.currentTimeMillis());
+		job.setProperty(FAILED, (long) failed);
+
+		return job;
+	}
+
+	/**
+	 * Progress of the latest run, as the caller's transaction sees it; empty
+	 * if there has never been one
+	 */
+	public static Optional<Status> status(GraphDatabaseService gdb) {
+		return getJob(gdb).map(job -> new Status(job, getTopics(gdb)));
+	}
+
+	public static final class Status {
+		private final long run;
+		private final Mode mode;
+		private final long topics;
+		private final long done;
+		private final long failed;
+		private final long drifted;
+		private final boolean finished;
+		private final long elapsedMillis;
+		private final double topicsPerSecond;
+
+		private Status(Node job, List<Node> topics) {
+			this.run = (long) job.getProperty(RUN);
+			this.mode = Mode.valueOf((String) job.getProperty(MODE));
+			this.topics = topics.size();
+			this.finished = (boolean) job.getProperty(FINISHED, false);
+			this.failed = (long) job.getProperty(FAILED, 0L);
+
+			List<Node> maintained = topics.stream()
+					.filter(topic -> isMaintainedIn(topic, run))
+					.collect(toList());
+
+			this.done = maintained.size();
+			this.drifted = maintained.stream()
+					.mapToLong(topic -> (long) topic.getProperty(DRIFTED, 0L))
+					.sum();
+
+			// since this run was last (re)started, while it's going
+			long started = (long) job.getProperty(STARTED);
+			long until = (long) job.getProperty(ENDED, System.currentTimeMillis());
+
+			this.elapsedMillis = Math.max(0, until - started);
+
+			long doneSinceStart = done - (long) job.getProperty(DONE_AT_START, 0L);
+
+			this.topicsPerSecond = elapsedMillis == 0 ? 0 : doneSinceStart * 1000.0 / elapsedMillis;
+		}
+
+		public long getRun() {
+			return run;
+		}
+
+		public Mode getMode() {
+			return mode;
+		}
+
+		public long getTopics() {
+			return topics;
+		}
+
+		public long getDone() {
+			return done;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public long getDrifted() {
+			return drifted;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public double getTopicsPerSecond() {
+			return topicsPerSecond;
+		}
+	}
+
+	private static boolean isMaintainedIn(Node topic, long run) {
+		return Long.valueOf(run).equals(topic.getProperty(MAINTAINED, null));
+	}
+
+	private static Optional<Node> getJob(GraphDatabaseService gdb) {
+		return gdb.findNodes(JOB).stream().findFirst();
+	}
+
+	private static List<Node> getTopics(GraphDatabaseService gdb) {
+		return gdb.findNodes(Nodes.Labels.TOPIC).stream()
+				.collect(toList());
+	}
+}
@@ -0,0 +1,130 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import outlikealambda.traversal.TopicEncoding.Kind;
+import outlikealambda.utils.Composables;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Reads and writes the relationships of one topic, in its encoding, with
+ * CONNECTED read and written in one generation
+ */
+public final class TopicRelationships {
+	private final TopicEncoding encoding;
+	private final long topicId;
+	private final long generation;
+
+	// by Kind ordinal, so reads don't build a type name each time
+	private final RelationshipType[] types;
+
+	public TopicRelationships(TopicEncoding encoding, long topicId) {
+		this(encoding, topicId, 0);
+	}
+
+	public TopicRelationships(TopicEncoding encoding, long topicId, long generation) {
+		this.encoding = encoding;
+		this.topicId = topicId;
+		this.generation = generation;
+		this.types = Arrays.stream(Kind.values())
+				.map(kind -> encoding.type(kind, topicId, generation))
+				.toArray(RelationshipType[]::new);
+	}
+
+	public TopicEncoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * The single outgoing relationship of the kind, null if missing
+	 */
+	public Relationship getSingleOut(Node n, Kind kind) {
+		if (encoding == TopicEncoding.PER_TYPE) {
+			return n.getSingleRelationship(types[kind.ordinal()], Direction.OUTGOING);
+		}
+
+		for (Relationship r : n.getRelationships(types[kind.ordinal()], Direction.OUTGOING)) {
+			if (encoding.isInTopic(r, topicId, generation)) {
+				return r;
+			}
+		}
+
+		return null;
+	}
+
+	public Function<Node, Relationship> singleOut(Kind kind) {
+		return n -> getSingleOut(n, kind);
+	}
+
+	public boolean hasOut(Node n, Kind kind) {
+		if (encoding == TopicEncoding.PER_TYPE) {
+			return n.hasRelationship(types[kind.ordinal()], Direction.OUTGOING);
+		}
+
+		return getSingleOut(n, kind) != null;
+	}
+
+	public Stream<Relationship> getOut(Node n, Kind... kinds) {
+		return get(n, Direction.OUTGOING, kinds);
+	}
+
+	public Stream<Relationship> getIn(Node n, Kind... kinds) {
+		return get(n, Direction.INCOMING, kinds);
+	}
+
+	public boolean is(Relationship r, Kind kind) {
+		return r.isType(types[kind.ordinal()]) && encoding.isInTopic(r, topicId, generation);
+	}
+
+	public Relationship create(Node source, Node target, Kind kind) {
+		return encoding.create(source, target, kind, topicId, generation);
+	}
+
+	/**
+	 * Replaces source's outgoing relationship of the kind with one to target;
+	 * a null target only clears it
+	 */
+	public void clearAndLinkOut(Node source, Node target, Kind kind) {
+		Optional.ofNullable(getSingleOut(source, kind))
+				.ifPresent(Relationship::delete);
+
+		Optional.ofNullable(target)
+				.ifPresent(t -> create(source, t, kind));
+	}
+
+	/**
+	 * Rewrites n's outgoing relationships in this topic into another encoding
+	 *
+	 * @return the number of relationships rewritten
+	 */
+	public long reencodeOut(Node n, TopicRelationships to) {
+		long count = 0;
+
+		for (Kind kind : Kind.values()) {
+			for (Relationship r : getOut(n, kind).collect(toList())) {
+				to.create(n, r.getEndNode(), kind);
+				r.delete();
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private Stream<Relationship> get(Node n, Direction direction, Kind... kinds) {
+		return Composables.goStream(n.getRelationships(
+				direction,
+				Arrays.stream(kinds)
+						.map(kind -> types[kind.ordinal()])
+						.toArray(RelationshipType[]::new)))
+				.filter(r -> encoding.isInTopic(r, topicId, generation));
+	}
+}
@@ -0,0 +1,155 @@
+package outlikealambda.traversal;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.TransientFailureException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs per-topic work on a bounded pool, each unit of work in its own
+ * transaction.
+ *
+ * Work submitted here does _not_ see the caller's uncommitted changes, so
+ * anything the topics depend on has to be committed first (see runAlone).
+ */
+public class TopicWorkers {
+	// topics share Person nodes, so concurrent cascades can deadlock;
+	// those are retried from scratch in a fresh transaction
+	private static final int MAX_ATTEMPTS = 5;
+
+	private final GraphDatabaseService gdb;
+	private final int threads;
+
+	public TopicWorkers(GraphDatabaseService gdb, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("TopicWorkers needs at least one thread");
+		}
+
+		this.gdb = gdb;
+		this.threads = threads;
+	}
+
+	/**
+	 * The thread count a procedure was asked for, as an int, refusing any
+	 * which the cast would change
+	 */
+	public static int threads(long requested) {
+		if (requested < 1 || requested > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("threads must be between 1 and " + Integer.MAX_VALUE + ", not " + requested);
+		}
+
+		return (int) requested;
+	}
+
+	/**
+	 * Runs and commits the work in its own transaction, returning its result
+	 * once it's done.  The commit stands even if the calling thread's
+	 * transaction is rolled back.
+	 *
+	 * Refused while the calling thread's transaction has uncommitted writes:
+	 * the work couldn't see them, and would wait on their locks until the
+	 * caller gave up.
+	 */
+	public <T> T runAlone(Supplier<T> work) {
+		if (callerHasWrites()) {
+			throw new IllegalStateException(
+					"Can't commit on its own after writes in the same transaction; commit them first");
+		}
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+
+		try {
+			return pool.submit(() -> {
+				AtomicReference<T> result = new AtomicReference<>();
+				inTransaction(() -> result.set(work.get()));
+				return result.get();
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting on a transaction", e);
+		} catch (ExecutionException e) {
+			throw asRuntime(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the work once per topic, and waits for all topics to finish.
+	 *
+	 * @return the failure of each topic which could not be committed, by topic id
+	 */
+	public Map<Long, Throwable> forEachTopic(List<Long> topicIds, LongConsumer work) {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, topicIds.size())));
+		List<Future<?>> pending = new ArrayList<>();
+		Map<Long, Throwable> failures = new LinkedHashMap<>();
+
+		try {
+			topicIds.forEach(topicId -> pending.add(pool.submit(() -> inTransaction(() -> work.accept(topicId)))));
+
+			for (int i = 0; i < pending.size(); i++) {
+				try {
+					pending.get(i).get();
+				} catch (ExecutionException e) {
+					failures.put(topicIds.get(i), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pending.forEach(future -> future.cancel(true));
+			throw new IllegalStateException("Interrupted while waiting on topics", e);
+		} finally {
+			pool.shutdown();
+		}
+
+		return failures;
+	}
+
+	/**
+	 * Runs and commits the work in a transaction on the calling thread
+	 */
+	void inTransaction(Runnable work) {
+		for (int attempt = 1; ; attempt++) {
+			try (Transaction tx = gdb.beginTx()) {
+				work.run();
+				tx.success();
+				return;
+			} catch (TransientFailureException e) {
+				if (attempt == MAX_ATTEMPTS) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private boolean callerHasWrites() {
+		if (!(gdb instanceof GraphDatabaseAPI)) {
+			return false;
+		}
+
+		KernelTransaction caller = ((GraphDatabaseAPI) gdb).getDependencyResolver()
+				.resolveDependency(ThreadToStatementContextBridge.class)
+				.getKernelTransactionBoundToThisThread(false);
+
+		return caller instanceof TxStateHolder && ((TxStateHolder) caller).hasTxStateWithChanges();
+	}
+
+	private static RuntimeException asRuntime(Throwable t) {
+		return t instanceof RuntimeException ? (RuntimeException) t : new IllegalStateException(t);
+	}
+}
@@ -1,51 +1,71 @@
 package outlikealambda.traversal.unwind;
 
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
 import outlikealambda.traversal.walk.Navigator;
+import outlikealambda.utils.LongQueue;
+import outlikealambda.utils.LongSet;
 
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 
 public class BasicUnwinder implements Unwinder {
 	private final Navigator nav;
 
+	// kept between unwinds; nodes are marked as seen when they're queued
+	private final LongSet seen = new LongSet();
+	private final LongQueue queue = new LongQueue();
+
 	public BasicUnwinder(Navigator nav) {
 		this.nav = nav;
 	}
 
 	/**
 	 * Breadth first seems reasonable -- leaves the furthest upstream for last.
-	 * Collects all upstream nodes, clearing their connection state (connected/disjoint)
-	 * as it finds them.
+	 * Collects all upstream nodes.
 	 */
 	@Override
-	public LinkedHashSet<Node> unwind(Node start) {
+	public LinkedHashSet<Node> collect(Node start) {
+		GraphDatabaseService gdb = start.getGraphDatabase();
 		LinkedHashSet<Node> upstream = new LinkedHashSet<>();
-		LinkedList<Node> queue = new LinkedList<>();
 
-		queue.push(start);
+		seen.clear();
+		queue.clear();
 
-		Node current;
+		enqueue(start);
 
 		while(!queue.isEmpty()) {
-			current = queue.pop();
+			Node current = gdb.getNodeById(queue.poll());
 
-			// go to next node in queue if we've already visited
-			if (!upstream.contains(current)) {
+			upstream.add(current);
 
-				// remove any connected/disjoint state
-				nav.clearConnectionState(current);
+			nav.getUpstream(current)
+					.forEach(this::enqueue);
+		}
 
-				upstream.add(current);
+		return upstream;
+	}
 
-				nav.getRankedAndManualIn(current)
-						.map(Relationship::getStartNode)
-						.forEach(queue::add);
-			}
+	/**
+	 * Collects all upstream nodes, clearing their connection state (connected/disjoint)
+	 */
+	@Override
+	public LinkedHashSet<Node> unwind(Node start) {
+		LinkedHashSet<Node> upstream = collect(start);
+
+		nav.beginCascade();
+		try {
+			upstream.forEach(nav::clearConnectionState);
+		} finally {
+			nav.endCascade();
 		}
 
 		return upstream;
 	}
 
+	private void enqueue(Node node) {
+		if (seen.add(node.getId())) {
+			queue.add(node.getId());
+		}
+	}
+
 }
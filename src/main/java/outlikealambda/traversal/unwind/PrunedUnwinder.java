@@ -0,0 +1,74 @@
+package outlikealambda.traversal.unwind;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import outlikealambda.traversal.walk.Navigator;
+import outlikealambda.utils.LongQueue;
+import outlikealambda.utils.LongSet;
+
+import java.util.LinkedHashSet;
+
+/**
+ * Same as BasicUnwinder, but only collects the upstream nodes whose walk
+ * depends on a node already collected; see Navigator.dependsOn.
+ *
+ * Authors only walk their opinion, and nodes with a manual target only walk
+ * that, so neither is collected through a ranked neighbor.  A node connected
+ * ahead of the collected neighbor keeps its connection, unless that
+ * connection is collected as well, when it is reconsidered from there.
+ * Everything left out keeps its state, which is still what a walk would give.
+ */
+public class PrunedUnwinder implements Unwinder {
+	private final Navigator nav;
+
+	// kept between unwinds; nodes are marked as collected when they're queued
+	private final LongSet collected = new LongSet();
+	private final LongQueue queue = new LongQueue();
+
+	public PrunedUnwinder(Navigator nav) {
+		this.nav = nav;
+	}
+
+	@Override
+	public LinkedHashSet<Node> collect(Node start) {
+		GraphDatabaseService gdb = start.getGraphDatabase();
+		LinkedHashSet<Node> upstream = new LinkedHashSet<>();
+
+		collected.clear();
+		queue.clear();
+
+		collected.add(start.getId());
+		queue.add(start.getId());
+
+		while(!queue.isEmpty()) {
+			Node current = gdb.getNodeById(queue.poll());
+
+			upstream.add(current);
+
+			// a source left out here is checked again from each collected neighbor
+			nav.getUpstream(current)
+					.filter(source -> !collected.contains(source.getId()))
+					.filter(source -> nav.dependsOn(source, current))
+					.forEach(source -> {
+						collected.add(source.getId());
+						queue.add(source.getId());
+					});
+		}
+
+		return upstream;
+	}
+
+	@Override
+	public LinkedHashSet<Node> unwind(Node start) {
+		LinkedHashSet<Node> upstream = collect(start);
+
+		nav.beginCascade();
+		try {
+			upstream.forEach(nav::clearConnectionState);
+		} finally {
+			nav.endCascade();
+		}
+
+		return upstream;
+	}
+}
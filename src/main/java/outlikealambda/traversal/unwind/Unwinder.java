@@ -5,5 +5,14 @@ import org.neo4j.graphdb.Node;
 import java.util.LinkedHashSet;
 
 public interface Unwinder {
+	/**
+	 * The nodes whose connection may change along with start's, start first.
+	 * Only reads; see CleanBlazer.rewalk.
+	 */
+	LinkedHashSet<Node> collect(Node start);
+
+	/**
+	 * Same as collect, clearing the connection state of each node found
+	 */
 	LinkedHashSet<Node> unwind(Node start);
 }
@@ -1,19 +1,39 @@
 package outlikealambda.traversal.walk;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import outlikealambda.utils.Optionals;
+import org.neo4j.graphdb.NotFoundException;
+import outlikealambda.utils.LongSet;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Walks are iterative: each node being walked holds a Frame on an explicit
+ * stack, so delegation chains can be as long as they like without running
+ * out of call stack.  Frames and the visited set are reused from walk to walk.
+ *
+ * A hop allocates nothing of its own: each frame refills its WalkTargets,
+ * and only cycles need a Result of their own.  Targets stay ids until they
+ * need walking; nodes already processed or on the walk's path are answered
+ * by id, so a Node is only resolved for nodes which are walked, and for the
+ * target a node ends up connected through.
+ */
 public class Blazer {
 	private final Navigator navigator;
-	private final Set<Long> visited = new HashSet<>();
-	private Controller controller;
+	private final LongSet visited = new LongSet();
+
+	// of the visited nodes, those already resolved, and which of them connected
+	private final LongSet resolved = new LongSet();
+	private final LongSet connected = new LongSet();
+	private final List<Frame> frames = new ArrayList<>();
+	private final Controller controller;
+
+	// of the walk in progress; targets are read as ids
+	private GraphDatabaseService gdb;
+
+	// number of frames in use; frames.get(depth - 1) is the node being walked
+	private int depth = 0;
 
 	public Blazer(
 			Navigator navigator,
@@ -24,114 +44,233 @@ public class Blazer {
 	}
 
 	interface Controller {
-		NodeWalker decorate(NodeWalker delegate);
+		/**
+		 * Called as the walk starts on a node, before its targets are read.
+		 * The returned flag is handed back to exit once the node has a result.
+		 * Nodes which aren't walked (opinions, processed nodes and cycles) are
+		 * neither entered nor exited.
+		 */
+		boolean enter(Node node);
 
-		Optional<Result> handleProcessed(Node node);
+		void exit(Node node, boolean entered);
+
+		/**
+		 * @return the Result of a node which has already been processed, or
+		 * null if it still needs walking
+		 */
+		Result handleProcessed(Node node);
+
+		/**
+		 * Same as handleProcessed, by id alone, so no Node is resolved; null
+		 * if the node is needed to tell
+		 */
+		default Result handleProcessed(long id) {
+			return null;
+		}
 
 		void go(Node start);
 	}
 
-	interface NodeWalker {
-		Result walk(Node n);
+	void start(Node start) {
+		visited.clear();
+		resolved.clear();
+		connected.clear();
+		gdb = start.getGraphDatabase();
+
+		navigator.beginCascade();
+		try {
+			walk(start);
+		} finally {
+			navigator.endCascade();
+		}
 	}
 
-	Collection<Long> start(Node start) {
-		visited.clear();
+	/**
+	 * Walk through the outgoing connections (connection order logic is in Navigator).
+	 * - if we have a manual outgoing, check _only_ that connection
+	 * - otherwise, check all ranked outgoing connections (in ranked order)
+	 *
+	 * A node stops walking its outgoing connections when:
+	 * 1. We find a connected child -- that means we're connected
+	 * 2. A child returns a cycle Result.  That means we're part of a cycle
+	 *    and need to mark ourselves as such and let the previous node know (unless we are
+	 *    the cycle end)
+	 * 3. We've checked all our outgoing connections, with no success.  That means we're disjoint
+	 *
+	 * Each iteration either steps into the next outgoing target of the top frame,
+	 * or resolves the top frame and hands its Result down to the frame below.
+	 */
+	private Result walk(Node start) {
+		Result result = reach(start.getId());
+
+		if (result == null) {
+			result = enter(start);
+		}
+
+		while (depth > 0) {
+			Frame frame = frames.get(depth - 1);
+
+			if (result != null && result.isResolved()) {
+				// we found a result, either:
+				// 1. a connected outgoing target
+				// 2. a cycle :(
+				result = resolve(frame, result);
+			} else if (frame.targets.hasNext()) {
+				frame.targetId = frame.targets.next();
+				frame.target = null;
+				frame.index++;
+
+				result = reach(frame.targetId);
+
+				if (result == null) {
+					// a deleted target can be left in an array encoded list; it's
+					// skipped, but still counts, so indexes stay positions in the list
+					try {
+						frame.target = gdb.getNodeById(frame.targetId);
+					} catch (NotFoundException e) {
+						continue;
+					}
+
+					result = enter(frame.target);
+				}
+				continue;
+			} else {
+				// all of the outgoing targets were disjoint, so we ourselves
+				// are disjoint
+				navigator.setDisjoint(frame.source);
+				result = Result.noPathFound();
+			}
 
-		controller.decorate(this::blaze).walk(start);
+			resolved.add(frame.source.getId());
+			if (result.isSuccess()) {
+				connected.add(frame.source.getId());
+			}
+
+			depth--;
+			controller.exit(frame.source, frame.entered);
+			frame.clear();
+		}
 
-		return visited;
+		return result;
 	}
 
-	private Result blaze(Node source) {
+	/**
+	 * @return the Result for a node which can be answered by id, or null if
+	 * it has to be resolved (see enter)
+	 */
+	private Result reach(long id) {
+		Result alreadyProcessed = controller.handleProcessed(id);
+		if (alreadyProcessed != null) {
+			// we've already processed this node
+			return alreadyProcessed;
+		}
+
+		if (visited.contains(id)) {
+			// either resolved earlier in this walk, or we've found a cycle!
+			return resolved.contains(id) ? Result.of(connected.contains(id)) : Result.cycle(id);
+		}
 
+		return null;
+	}
+
+	/**
+	 * @return the Result for a node which doesn't need walking, or null after
+	 * pushing a frame for a node which does
+	 */
+	private Result enter(Node source) {
 		if (navigator.isOpinion(source)) {
 			// we've found an opinion
 			return Result.pathFound();
 		}
 
-		Optional<Result> alreadyProcessed = controller.handleProcessed(source);
-		if (alreadyProcessed.isPresent()) {
+		Result alreadyProcessed = controller.handleProcessed(source);
+		if (alreadyProcessed != null) {
 			// we've already processed this node
-			return alreadyProcessed.get();
+			return alreadyProcessed;
 		}
 
-		// We've found a cycle!
-		if (!visited.add(source.getId())) {
-			return Result.cycle(source.getId());
+		if (depth == frames.size()) {
+			frames.add(new Frame());
 		}
 
-		return checkOutgoing(source);
+		Frame frame = frames.get(depth++);
+
+		visited.add(source.getId());
+		frame.set(source, controller.enter(source));
+		navigator.loadWalkableTargets(source, frame.targets);
+
+		return null;
 	}
 
 	/**
-	 * Walk through the outgoing connections (connection order logic is in Navigator).
-	 * - if we have a manual outgoing, check _only_ that connection
-	 * - otherwise, check all ranked outgoing connections (in ranked order)
-	 *
-	 * We can stop when:
-	 * 1. We find a connected child -- that means we're connected
-	 * 2. A child returns an Optional<Node> cycleMarker.  That means we're part of a cycle
-	 *    and need to mark ourselves as such and let the previous node know (unless we are
-	 *    the cycle end)
-	 * 3. We've checked all our outgoing connections, with no success.  That means we're disjoint
+	 * Connections and states are replaced in place, so a node which ends up
+	 * where it was costs no relationship writes
 	 */
-	private Result checkOutgoing(Node source) {
-		Optional<Pair<Node, Result>> targetResult = navigator.getWalkableOutgoing(source)
-				.map(Relationship::getEndNode)
-				.map(target -> Pair.of(target, controller.decorate(this::blaze).walk(target)))
-				.filter(pair -> pair.getRight().isResolved())
-				.findFirst();
-
-		return Optionals.ifElseMap(
-				targetResult,
-				tr -> {
-					// we found a result, either:
-					// 1. a connected outgoing target
-					// 2. a cycle :(
-					Node target = tr.getLeft();
-					Result result = tr.getRight();
-
-					if (result.isSuccess()) {
-						navigator.clearConnectionState(source);
-						navigator.setConnected(source, target);
-
-						// pass through
-						return result;
-					} else {
-						// We have a non-connected result, that didn't get filtered;
-						// must be a cycle
-						navigator.clearConnectionState(source);
-						navigator.setDisjoint(source);
-
-						if (result.getCycleEndId() == source.getId()) {
-							// If this is the origin of the cycle, simply return a noPathFound,
-							// so the upstream node can look for a different path
-							return Result.noPathFound();
-						} else {
-							// Pass through the Result with the cycleEndId so the next upstream
-							// node knows that it is part of a cycle
-							return result;
-						}
-					}
+	private Result resolve(Frame frame, Result result) {
+		Node source = frame.source;
 
-				},
-				() -> {
-					// all of the outgoing targets were disjoint, so we ourselves
-					// are disjoint
-					navigator.clearConnectionState(source);
-					navigator.setDisjoint(source);
-					return Result.noPathFound();
-				}
-		);
+		if (result.isSuccess()) {
+			// targets answered by id are only resolved here
+			Node target = frame.target != null ? frame.target : gdb.getNodeById(frame.targetId);
+
+			navigator.setConnected(source, target, frame.index);
+
+			// pass through
+			return result;
+		}
+
+		// We have a non-connected result, that didn't get filtered;
+		// must be a cycle
+		navigator.setDisjoint(source);
+
+		if (result.getCycleEndId() == source.getId()) {
+			// If this is the origin of the cycle, simply return a noPathFound,
+			// so the upstream node can look for a different path
+			return Result.noPathFound();
+		} else {
+			// Pass through the Result with the cycleEndId so the next upstream
+			// node knows that it is part of a cycle
+			return result;
+		}
+	}
+
+	private static class Frame {
+		private final WalkTargets targets = new WalkTargets();
+
+		private Node source;
+		private boolean entered;
+		private long targetId;
+
+		// null until the target needs resolving
+		private Node target;
+
+		// position of target in the walk order
+		private int index;
+
+		private void set(Node source, boolean entered) {
+			this.source = source;
+			this.entered = entered;
+			this.targetId = -1;
+			this.target = null;
+			this.index = -1;
+		}
+
+		private void clear() {
+			set(null, false);
+			targets.clear();
+		}
 	}
 
 	public static class Result {
-		private boolean success;
-		private Long cycleEndId;
+		private static final Result PATH_FOUND = new Result(true);
+		private static final Result NO_PATH_FOUND = new Result(false);
+
+		private final boolean success;
+		private final Long cycleEndId;
 
-		public Result(boolean success) {
+		private Result(boolean success) {
 			this.success = success;
+			this.cycleEndId = null;
 		}
 
 		private Result(long cycleEndId) {
@@ -139,6 +278,10 @@ public class Blazer {
 			this.cycleEndId = cycleEndId;
 		}
 
+		public static Result of(boolean connected) {
+			return connected ? PATH_FOUND : NO_PATH_FOUND;
+		}
+
 		private boolean isResolved() {
 			return success || cycleEndId != null;
 		}
@@ -156,11 +299,11 @@ public class Blazer {
 		}
 
 		private static Result pathFound() {
-			return new Result(true);
+			return PATH_FOUND;
 		}
 
 		private static Result noPathFound() {
-			return new Result(false);
+			return NO_PATH_FOUND;
 		}
 	}
 }
@@ -1,11 +1,9 @@
 package outlikealambda.traversal.walk;
 
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
-import outlikealambda.utils.Composables;
-import outlikealambda.utils.Traversals;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.Comparator;
 
 /**
  * Assumes that all nodes in the graph which _may_ change
@@ -15,27 +13,67 @@ import java.util.Optional;
  */
 public class CleanBlazer implements Blazer.Controller {
 	private final Navigator navigator;
+	private final Blazer blazer;
 
 	public CleanBlazer(Navigator navigator) {
 		this.navigator = navigator;
+		this.blazer = new Blazer(navigator, this);
 	}
 
 	@Override
 	public void go(Node start) {
-		new Blazer(navigator, this).start(start);
+		blazer.start(start);
+	}
+
+	/**
+	 * Invalidates every state in the topic (see Navigator.invalidate), then
+	 * walks each node given in id order, in one cascade.  A walk stops at
+	 * nodes which already have a state from this walk, so each node is walked
+	 * once; the nodes given should cover the topic.
+	 */
+	public void rebuild(Collection<Node> nodes) {
+		navigator.beginCascade();
+		try {
+			navigator.invalidate();
+
+			nodes.stream()
+					.sorted(Comparator.comparingLong(Node::getId))
+					.forEach(this::go);
+		} finally {
+			navigator.endCascade();
+		}
+	}
+
+	/**
+	 * Walks the nodes again, in order, in one cascade; for the nodes an
+	 * Unwinder collects.  Their states are only cleared within the cascade,
+	 * so nodes which end up where they were cost no writes.
+	 */
+	public void rewalk(Collection<Node> nodes) {
+		navigator.beginCascade();
+		try {
+			nodes.forEach(navigator::clearConnectionState);
+			nodes.forEach(this::go);
+		} finally {
+			navigator.endCascade();
+		}
 	}
 
 
 	@Override
-	public Optional<Blazer.Result> handleProcessed(Node source) {
-		return Optional.of(source)
-				.filter(Composables.or(navigator::isConnected, navigator::isDisjoint))
-				.map(navigator::isConnected)
-				.map(Blazer.Result::new);
+	public Blazer.Result handleProcessed(Node source) {
+		if (navigator.isConnected(source)) {
+			return Blazer.Result.of(true);
+		}
+
+		return navigator.isDisjoint(source) ? Blazer.Result.of(false) : null;
 	}
 
 	@Override
-	public Blazer.NodeWalker decorate(Blazer.NodeWalker decorated) {
-		return decorated;
+	public boolean enter(Node node) {
+		return false;
 	}
+
+	@Override
+	public void exit(Node node, boolean entered) {}
 }
@@ -0,0 +1,222 @@
+package outlikealambda.traversal.walk;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import outlikealambda.traversal.TopicEncoding;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static outlikealambda.traversal.walk.CompactTopology.NONE;
+
+/**
+ * Answers the walk from a CompactTopology snapshot instead of the store,
+ * turning each hop into array reads.
+ *
+ * Every write goes through to Neo4j as well as into the snapshot, so the
+ * store is always up to date, and the Relationship-level reads (used for
+ * output, not walking) still come from the store.
+ *
+ * RANKED is read once, at load: a navigator should be loaded for a unit of
+ * work (a cascade, a batch, a rebuild), not kept across ranked changes.
+ * Nodes created after the load are answered by the store.
+ */
+public class CompactNavigator extends Navigator {
+	private final GraphDatabaseService gdb;
+	private final CompactTopology topology;
+
+	private CompactNavigator(long topicId, long generation, GraphDatabaseService gdb) {
+		super(topicId, generation);
+		this.gdb = gdb;
+		this.topology = CompactTopology.load(gdb, new Navigator(topicId, generation));
+	}
+
+	/**
+	 * A snapshot of the generation of the topic which is live now
+	 */
+	public static CompactNavigator load(GraphDatabaseService gdb, long topicId) {
+		return load(gdb, topicId, TopicEncoding.generation(gdb, topicId));
+	}
+
+	public static CompactNavigator load(GraphDatabaseService gdb, long topicId, long generation) {
+		return new CompactNavigator(topicId, generation, gdb);
+	}
+
+	@Override
+	public boolean isConnected(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.isConnected(n) : topology.isConnected(slot);
+	}
+
+	@Override
+	public boolean isDisjoint(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.isDisjoint(n) : topology.isDisjoint(slot);
+	}
+
+	@Override
+	public boolean isAuthor(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.isAuthor(n) : topology.getAuthored(slot) != NONE;
+	}
+
+	@Override
+	public boolean isOpinion(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.isOpinion(n) : topology.isOpinion(slot);
+	}
+
+	@Override
+	public Node getOpinion(Node author) {
+		int slot = topology.slotOf(author);
+
+		if (slot == NONE) {
+			return super.getOpinion(author);
+		}
+
+		if (topology.getAuthored(slot) == NONE) {
+			throw new IllegalArgumentException("Don't call getOpinion unless you're sure you have an author");
+		}
+
+		return toNode(topology.getAuthored(slot));
+	}
+
+	@Override
+	public Node getConnectedTarget(Node n) {
+		int slot = topology.slotOf(n);
+
+		if (slot == NONE) {
+			return super.getConnectedTarget(n);
+		}
+
+		// same fallback as getConnectionOut: connected, otherwise manual
+		int target = topology.isConnected(slot) ? topology.getConnected(slot) : topology.getManual(slot);
+
+		if (target == NONE) {
+			throw new IllegalArgumentException("getConnectionOut must have a connection");
+		}
+
+		return toNode(target);
+	}
+
+	@Override
+	public Stream<Node> getConnectedSources(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.getConnectedSources(n) : toNodes(topology.connectedSources(slot));
+	}
+
+	@Override
+	public Stream<Node> getUpstream(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.getUpstream(n) : toNodes(topology.upstream(slot));
+	}
+
+	@Override
+	public Stream<Node> getWalkableTargets(Node n) {
+		int slot = topology.slotOf(n);
+
+		return slot == NONE ? super.getWalkableTargets(n) : toNodes(topology.walkable(slot));
+	}
+
+	@Override
+	void loadWalkableTargets(Node n, WalkTargets targets) {
+		int slot = topology.slotOf(n);
+
+		if (slot == NONE) {
+			super.loadWalkableTargets(n, targets);
+		} else {
+			topology.loadWalkable(slot, targets);
+		}
+	}
+
+	@Override
+	public void clearConnectionState(Node n) {
+		super.clearConnectionState(n);
+
+		int slot = topology.slotOf(n);
+		if (slot != NONE) {
+			topology.clearConnectionState(slot);
+		}
+	}
+
+	/**
+	 * The snapshot's states are cleared outright, which only costs array
+	 * writes; the store is left to Navigator.invalidate
+	 */
+	@Override
+	public void invalidate() {
+		super.invalidate();
+
+		topology.clearConnectionStates();
+	}
+
+	/**
+	 * The index is a position in the snapshot's list; where that isn't the
+	 * stored list's, none is recorded (see Navigator.dependsOn)
+	 */
+	@Override
+	public void setConnected(Node source, Node target, int index) {
+		int slot = topology.slotOf(source);
+
+		super.setConnected(source, target, slot != NONE && topology.isShortened(slot) ? -1 : index);
+
+		if (slot != NONE) {
+			topology.setConnected(slot, requireSlot(target));
+		}
+	}
+
+	@Override
+	public void setDisjoint(Node n) {
+		super.setDisjoint(n);
+
+		int slot = topology.slotOf(n);
+		if (slot != NONE) {
+			topology.clearConnectionState(slot);
+			topology.setDisjoint(slot);
+		}
+	}
+
+	@Override
+	public void setTarget(Node source, Node target) {
+		super.setTarget(source, target);
+
+		int slot = topology.slotOf(source);
+		if (slot != NONE) {
+			topology.setManual(slot, target == null ? NONE : requireSlot(target));
+		}
+	}
+
+	@Override
+	public void setOpinion(Node author, Node opinion) {
+		super.setOpinion(author, opinion);
+
+		int slot = topology.slotOf(author);
+		if (slot != NONE) {
+			topology.setAuthored(slot, opinion == null ? NONE : requireSlot(opinion));
+		}
+	}
+
+	private int requireSlot(Node n) {
+		int slot = topology.slotOf(n);
+
+		if (slot == NONE) {
+			throw new IllegalStateException("Node " + n.getId() + " is newer than the snapshot; reload the navigator");
+		}
+
+		return slot;
+	}
+
+	private Node toNode(int slot) {
+		return gdb.getNodeById(topology.idOf(slot));
+	}
+
+	private Stream<Node> toNodes(IntStream slots) {
+		return slots.mapToObj(this::toNode);
+	}
+}
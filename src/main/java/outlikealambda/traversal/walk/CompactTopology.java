@@ -0,0 +1,342 @@
+package outlikealambda.traversal.walk;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.Relationships;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * A snapshot of one topic's walkable graph, held in primitive arrays.
+ *
+ * Every Person and Opinion gets a slot, its index in the ascending `ids`
+ * array.  RANKED is stored as compressed sparse rows: the outgoing targets of
+ * slot s are rankedOut[rankedOutOffsets[s] .. rankedOutOffsets[s + 1]), already
+ * in rank order, and rankedIn holds the reverse.
+ *
+ * RANKED is fixed at load time.  The per-topic relationships can change, and
+ * are kept as one outgoing slot per node (each node has at most one manual
+ * target, one opinion, one connection) plus a linked list of incoming slots.
+ */
+final class CompactTopology {
+	static final int NONE = -1;
+
+	private final long[] ids;
+	private final BitSet opinions = new BitSet();
+	private final BitSet disjoint = new BitSet();
+	private final BitSet shortened = new BitSet();
+
+	private final int[] rankedOutOffsets;
+	private final int[] rankedInOffsets;
+	private int[] rankedOut;
+	private int[] rankedIn;
+
+	private final int[] manualOut;
+	private final int[] authoredOut;
+	private final int[] connectedOut;
+
+	private final IncomingSlots manualIn;
+	private final IncomingSlots connectedIn;
+
+	private CompactTopology(long[] ids) {
+		int size = ids.length;
+
+		this.ids = ids;
+		this.rankedOutOffsets = new int[size + 1];
+		this.rankedInOffsets = new int[size + 1];
+		this.manualOut = filled(size);
+		this.authoredOut = filled(size);
+		this.connectedOut = filled(size);
+		this.manualIn = new IncomingSlots(size);
+		this.connectedIn = new IncomingSlots(size);
+	}
+
+	/**
+	 * Reads every Person and Opinion through the store-backed navigator
+	 */
+	static CompactTopology load(GraphDatabaseService gdb, Navigator store) {
+		long[] ids = LongStream.concat(
+				gdb.findNodes(Nodes.Labels.PERSON).stream().mapToLong(Node::getId),
+				gdb.findNodes(Nodes.Labels.OPINION).stream().mapToLong(Node::getId))
+				.sorted()
+				.distinct()
+				.toArray();
+
+		CompactTopology topology = new CompactTopology(ids);
+		int[][] rankedBySlot = new int[ids.length][];
+		int rankedCount = 0;
+
+		for (int slot = 0; slot < ids.length; slot++) {
+			Node node = gdb.getNodeById(ids[slot]);
+
+			if (store.isOpinion(node)) {
+				topology.opinions.set(slot);
+				rankedBySlot[slot] = new int[0];
+				continue;
+			}
+
+			long[] rankedIds = Relationships.getRankedTargetIds(node);
+
+			rankedBySlot[slot] = LongStream.of(rankedIds)
+					.mapToInt(topology::slotOf)
+					.filter(target -> target != NONE)
+					.toArray();
+			rankedCount += rankedBySlot[slot].length;
+
+			if (rankedBySlot[slot].length != rankedIds.length) {
+				topology.shortened.set(slot);
+			}
+
+			topology.manualOut[slot] = topology.targetSlot(store.getManualOut(node));
+			topology.authoredOut[slot] = topology.targetSlot(store.getAuthoredOut(node));
+			topology.connectedOut[slot] = topology.targetSlot(store.getConnectedOut(node));
+
+			if (store.isDisjoint(node)) {
+				topology.disjoint.set(slot);
+			}
+		}
+
+		for (int slot = 0; slot < ids.length; slot++) {
+			topology.manualIn.link(slot, topology.manualOut[slot]);
+			topology.connectedIn.link(slot, topology.connectedOut[slot]);
+		}
+
+		// flatten ranked into rows, outgoing in rank order
+		int[] rankedOut = topology.rankedOut = new int[rankedCount];
+		int[] inDegree = new int[ids.length];
+
+		for (int slot = 0, offset = 0; slot < ids.length; slot++) {
+			topology.rankedOutOffsets[slot] = offset;
+			for (int target : rankedBySlot[slot]) {
+				rankedOut[offset++] = target;
+				inDegree[target]++;
+			}
+			topology.rankedOutOffsets[slot + 1] = offset;
+		}
+
+		// and the reverse, incoming in slot order
+		int[] rankedIn = topology.rankedIn = new int[rankedCount];
+		int[] fill = new int[ids.length];
+
+		for (int slot = 0; slot < ids.length; slot++) {
+			topology.rankedInOffsets[slot + 1] = topology.rankedInOffsets[slot] + inDegree[slot];
+			fill[slot] = topology.rankedInOffsets[slot];
+		}
+
+		for (int slot = 0; slot < ids.length; slot++) {
+			for (int i = topology.rankedOutOffsets[slot]; i < topology.rankedOutOffsets[slot + 1]; i++) {
+				rankedIn[fill[rankedOut[i]]++] = slot;
+			}
+		}
+
+		return topology;
+	}
+
+	int slotOf(Node n) {
+		return slotOf(n.getId());
+	}
+
+	private int slotOf(long id) {
+		int slot = Arrays.binarySearch(ids, id);
+
+		return slot < 0 ? NONE : slot;
+	}
+
+	/**
+	 * Whether targets were left out of the slot's ranked list, deleted or
+	 * neither Person nor Opinion, so positions in it aren't positions in the
+	 * stored list
+	 */
+	boolean isShortened(int slot) {
+		return shortened.get(slot);
+	}
+
+	long idOf(int slot) {
+		return ids[slot];
+	}
+
+	boolean isOpinion(int slot) {
+		return opinions.get(slot);
+	}
+
+	boolean isConnected(int slot) {
+		return connectedOut[slot] != NONE;
+	}
+
+	boolean isDisjoint(int slot) {
+		return disjoint.get(slot);
+	}
+
+	int getManual(int slot) {
+		return manualOut[slot];
+	}
+
+	int getAuthored(int slot) {
+		return authoredOut[slot];
+	}
+
+	int getConnected(int slot) {
+		return connectedOut[slot];
+	}
+
+	/**
+	 * Same order as Navigator: an opinion, otherwise a manual target,
+	 * otherwise ranked targets in rank order
+	 */
+	IntStream walkable(int slot) {
+		if (authoredOut[slot] != NONE) {
+			return IntStream.of(authoredOut[slot]);
+		}
+
+		if (manualOut[slot] != NONE) {
+			return IntStream.of(manualOut[slot]);
+		}
+
+		return Arrays.stream(rankedOut, rankedOutOffsets[slot], rankedOutOffsets[slot + 1]);
+	}
+
+	/**
+	 * walkable, as node ids, without allocating
+	 */
+	void loadWalkable(int slot, WalkTargets targets) {
+		targets.clear();
+
+		if (authoredOut[slot] != NONE) {
+			targets.add(ids[authoredOut[slot]]);
+		} else if (manualOut[slot] != NONE) {
+			targets.add(ids[manualOut[slot]]);
+		} else {
+			for (int i = rankedOutOffsets[slot]; i < rankedOutOffsets[slot + 1]; i++) {
+				targets.add(ids[rankedOut[i]]);
+			}
+		}
+	}
+
+	/**
+	 * Manual sources, then ranked sources
+	 */
+	IntStream upstream(int slot) {
+		return IntStream.concat(
+				manualIn.sources(slot),
+				Arrays.stream(rankedIn, rankedInOffsets[slot], rankedInOffsets[slot + 1]));
+	}
+
+	IntStream connectedSources(int slot) {
+		return connectedIn.sources(slot);
+	}
+
+	void clearConnectionState(int slot) {
+		connectedIn.unlink(slot, connectedOut[slot]);
+		connectedOut[slot] = NONE;
+		disjoint.clear(slot);
+	}
+
+	void clearConnectionStates() {
+		Arrays.fill(connectedOut, NONE);
+		connectedIn.clear();
+		disjoint.clear();
+	}
+
+	void setConnected(int source, int target) {
+		connectedIn.unlink(source, connectedOut[source]);
+		connectedOut[source] = target;
+		connectedIn.link(source, target);
+		disjoint.clear(source);
+	}
+
+	void setDisjoint(int slot) {
+		disjoint.set(slot);
+	}
+
+	void setManual(int source, int target) {
+		manualIn.unlink(source, manualOut[source]);
+		manualOut[source] = target;
+		manualIn.link(source, target);
+	}
+
+	void setAuthored(int author, int opinion) {
+		authoredOut[author] = opinion;
+	}
+
+	private int targetSlot(Relationship r) {
+		return r == null ? NONE : slotOf(r.getEndNode());
+	}
+
+	private static int[] filled(int size) {
+		int[] slots = new int[size];
+		Arrays.fill(slots, NONE);
+		return slots;
+	}
+
+	/**
+	 * Incoming single-valued relationships, as doubly linked lists threaded
+	 * through the source slots: head[target] is the first source, and
+	 * next/previous chain the rest.  Links and unlinks are O(1).
+	 */
+	private static final class IncomingSlots {
+		private final int[] head;
+		private final int[] next;
+		private final int[] previous;
+
+		private IncomingSlots(int size) {
+			this.head = filled(size);
+			this.next = filled(size);
+			this.previous = filled(size);
+		}
+
+		private void link(int source, int target) {
+			if (target == NONE) {
+				return;
+			}
+
+			next[source] = head[target];
+			previous[source] = NONE;
+
+			if (head[target] != NONE) {
+				previous[head[target]] = source;
+			}
+
+			head[target] = source;
+		}
+
+		private void unlink(int source, int target) {
+			if (target == NONE) {
+				return;
+			}
+
+			if (previous[source] == NONE) {
+				head[target] = next[source];
+			} else {
+				next[previous[source]] = next[source];
+			}
+
+			if (next[source] != NONE) {
+				previous[next[source]] = previous[source];
+			}
+
+			next[source] = NONE;
+			previous[source] = NONE;
+		}
+
+		private void clear() {
+			Arrays.fill(head, NONE);
+			Arrays.fill(next, NONE);
+			Arrays.fill(previous, NONE);
+		}
+
+		private IntStream sources(int target) {
+			IntStream.Builder sources = IntStream.builder();
+
+			for (int source = head[target]; source != NONE; source = next[source]) {
+				sources.add(source);
+			}
+
+			return sources.build();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package outlikealambda.traversal.walk;
+
+/**
+ * A node's connection state in one topic, packed into a single long
+ * property: the low two bits hold unknown, connected or disjoint, and the
+ * rest hold the position of the chosen target in the node's walk order, plus
+ * one (zero when it isn't known).
+ *
+ * Nodes written before the state was kept have no property; for those the
+ * state comes from the CONNECTED relationship and the old topic-wide
+ * disjoint flag.
+ */
+final class ConnectionState {
+	static final long UNKNOWN = 0;
+	static final long CONNECTED = 1;
+	static final long DISJOINT = 2;
+
+	private static final int STATE_BITS = 2;
+	private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+
+	static long connected(int index) {
+		return ((long) (index + 1) << STATE_BITS) | CONNECTED;
+	}
+
+	static long state(long packed) {
+		return packed & STATE_MASK;
+	}
+
+	/**
+	 * The position of the chosen target in the walk order; -1 if the node
+	 * isn't connected, or the position wasn't recorded
+	 */
+	static int index(long packed) {
+		return state(packed) == CONNECTED ? (int) (packed >>> STATE_BITS) - 1 : -1;
+	}
+
+	private ConnectionState() {}
+}
@@ -1,12 +1,12 @@
 package outlikealambda.traversal.walk;
 
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
+import outlikealambda.utils.LongQueue;
+import outlikealambda.utils.LongSet;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Optional;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * Basic algorithm:
@@ -19,69 +19,128 @@ import java.util.Set;
  * 4. If any touched node changes, add _children_ of touched node to forward walk queue
  * 5. Repeat
  *
+ * Several modified nodes can seed the same queue (see {@link #go(Collection)}),
+ * in which case they share a single processed set, and no node is blazed twice.
+ *
+ * The queue holds node ids, and a node is only queued once per cascade; the
+ * sets and queue are kept between cascades, so a cascade boxes nothing.
+ *
+ * Only upstream nodes whose walk depends on the flipped node are queued (see
+ * Navigator.dependsOn): authors, nodes with a manual target elsewhere, and
+ * nodes connected ahead of the flipped node can't change because of it.  If
+ * the node one of them is connected through flips, it's queued from there.
  */
 public class DirtyBlazer implements Blazer.Controller {
 	// Nodes which have already been blazed
-	private final Set<Long> processed = new HashSet<>();
+	private final LongSet processed = new LongSet();
+
+	// Of the processed nodes, those which ended up connected
+	private final LongSet connected = new LongSet();
+
+	// Nodes which have been queued, whether or not they've been blazed since
+	private final LongSet queued = new LongSet();
 
 	// Nodes to blaze (if not in processed)
-	private final LinkedList<Node> queue = new LinkedList<>();
+	private final LongQueue queue = new LongQueue();
 
 	private final Navigator nav;
+	private final Blazer blazer;
 
 	public DirtyBlazer(Navigator nav) {
 		this.nav = nav;
+		this.blazer = new Blazer(nav, this);
 	}
 
 	@Override
-	public Optional<Blazer.Result> handleProcessed(Node source) {
-		return Optional.of(source)
-				.filter(n -> processed.contains(n.getId()))
-				.map(nav::isConnected)
-				.map(Blazer.Result::new);
+	public Blazer.Result handleProcessed(Node source) {
+		return handleProcessed(source.getId());
 	}
 
+	/**
+	 * A processed node's state doesn't change again within the cascade, so
+	 * it's answered from the sets
+	 */
 	@Override
-	public Blazer.NodeWalker decorate(Blazer.NodeWalker delegate) {
-		return flippedNodeRecorder(delegate);
+	public Blazer.Result handleProcessed(long id) {
+		if (!processed.contains(id)) {
+			return null;
+		}
+
+		return Blazer.Result.of(connected.contains(id));
 	}
 
-	private Blazer.NodeWalker flippedNodeRecorder(Blazer.NodeWalker delegate) {
-		return node -> {
-			boolean before = nav.isConnected(node);
+	/**
+	 * Records whether the node was connected before the walk, so that exit
+	 * can tell if it flipped
+	 */
+	@Override
+	public boolean enter(Node node) {
+		return nav.isConnected(node);
+	}
 
-			Blazer.Result result = delegate.walk(node);
+	@Override
+	public void exit(Node node, boolean wasConnected) {
+		// mark the node as processed
+		processed.add(node.getId());
 
-			boolean after = nav.isConnected(node);
+		if (nav.isConnected(node)) {
+			connected.add(node.getId());
+		}
 
-			// mark the node as processed
-			processed.add(node.getId());
+		if (wasConnected != nav.isConnected(node)) {
+			// queue up the upstream nodes which may walk through each flipped node
+			nav.getUpstream(node)
+					.forEach(source -> enqueueIfDependent(source, node));
+		}
+	}
 
-			if (before != after) {
-				// queue up the incoming relationships of each flipped node
-				nav.getRankedAndManualIn(node)
-						.map(Relationship::getStartNode)
-						.forEach(queue::add);
-			}
+	private void enqueue(Node node) {
+		long id = node.getId();
+
+		if (!processed.contains(id) && queued.add(id)) {
+			queue.add(id);
+		}
+	}
+
+	private void enqueueIfDependent(Node source, Node flipped) {
+		long id = source.getId();
 
-			return result;
-		};
+		if (!processed.contains(id) && !queued.contains(id) && nav.dependsOn(source, flipped)) {
+			queued.add(id);
+			queue.add(id);
+		}
 	}
 
 	@Override
 	public void go(Node start) {
-		Blazer blazer = new Blazer(nav, this);
+		go(Collections.singletonList(start));
+	}
+
+	public void go(Collection<Node> starts) {
+		if (starts.isEmpty()) {
+			return;
+		}
+
+		GraphDatabaseService gdb = starts.iterator().next().getGraphDatabase();
+
 		processed.clear();
+		connected.clear();
+		queued.clear();
 		queue.clear();
 
-		queue.push(start);
+		starts.forEach(this::enqueue);
 
-		while (!queue.isEmpty()) {
-			Node current = queue.poll();
+		nav.beginCascade();
+		try {
+			while (!queue.isEmpty()) {
+				long current = queue.poll();
 
-			if (!processed.contains(current.getId())) {
-				blazer.start(current);
+				if (!processed.contains(current)) {
+					blazer.start(gdb.getNodeById(current));
+				}
 			}
+		} finally {
+			nav.endCascade();
 		}
 	}
 }
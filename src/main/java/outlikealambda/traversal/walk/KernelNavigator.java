@@ -0,0 +1,218 @@
+package outlikealambda.traversal.walk;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.StatementConstants;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.kernel.impl.api.RelationshipVisitor;
+import org.neo4j.kernel.impl.api.store.RelationshipIterator;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.Relationships;
+import outlikealambda.traversal.TopicEncoding;
+import outlikealambda.traversal.TopicEncoding.Kind;
+
+import java.util.Arrays;
+
+/**
+ * Answers the reads Blazer makes on every hop (isOpinion, isAuthor, the
+ * connection state and the walkable targets) through the kernel's
+ * ReadOperations, rather than Node and Relationship proxies.  Labels,
+ * relationship types and property keys are resolved to ids once, and hops
+ * read ids instead of entities.
+ *
+ * Writes, and the Relationship-level reads used for output, still go through
+ * the core API: they happen once per changed node, when a cascade ends.
+ * Ranked targets come from Relationships.getRankedTargetIds, which is a
+ * single property read, or a RankedCache hit.
+ *
+ * Must be used on the thread of the transaction it reads from.
+ */
+public class KernelNavigator extends Navigator {
+	private static final long NONE = -1;
+
+	private final long topicId;
+	private final long generation;
+	private final TopicEncoding encoding;
+	private final ThreadToStatementContextBridge bridge;
+
+	private final String stateKey;
+
+	// token ids, resolved on first use; unresolved while the token doesn't exist
+	private final int[] typeIds = new int[Kind.values().length];
+	private int opinionLabelId = StatementConstants.NO_SUCH_LABEL;
+	private int stateKeyId = StatementConstants.NO_SUCH_PROPERTY_KEY;
+	private int topicKeyId = StatementConstants.NO_SUCH_PROPERTY_KEY;
+
+	private final EndNode endNode = new EndNode();
+
+	private KernelNavigator(long topicId, long generation, GraphDatabaseService gdb) {
+		super(topicId, generation);
+		this.topicId = topicId;
+		this.generation = generation;
+		this.encoding = TopicEncoding.of(gdb, topicId);
+		this.bridge = ((GraphDatabaseAPI) gdb).getDependencyResolver()
+				.resolveDependency(ThreadToStatementContextBridge.class);
+		this.stateKey = Nodes.Fields.state(topicId, generation);
+
+		Arrays.fill(typeIds, StatementConstants.NO_SUCH_RELATIONSHIP_TYPE);
+	}
+
+	public static KernelNavigator create(GraphDatabaseService gdb, long topicId) {
+		return new KernelNavigator(topicId, TopicEncoding.generation(gdb, topicId), gdb);
+	}
+
+	@Override
+	public boolean isOpinion(Node n) {
+		try (Statement statement = bridge.get()) {
+			ReadOperations ops = statement.readOperations();
+			int label = opinionLabelId(ops);
+
+			return label != StatementConstants.NO_SUCH_LABEL && ops.nodeHasLabel(n.getId(), label);
+		} catch (EntityNotFoundException e) {
+			throw new NotFoundException(e);
+		}
+	}
+
+	@Override
+	public boolean isAuthor(Node n) {
+		try (Statement statement = bridge.get()) {
+			return singleOut(statement.readOperations(), n.getId(), Kind.AUTHORED) != NONE;
+		} catch (EntityNotFoundException e) {
+			throw new NotFoundException(e);
+		}
+	}
+
+	/**
+	 * Nodes without a state property fall back to the legacy reads in Navigator
+	 */
+	@Override
+	long readState(Node n) {
+		Object packed;
+
+		try (Statement statement = bridge.get()) {
+			ReadOperations ops = statement.readOperations();
+			int key = stateKeyId(ops);
+
+			packed = key == StatementConstants.NO_SUCH_PROPERTY_KEY ? null : ops.nodeGetProperty(n.getId(), key);
+		} catch (EntityNotFoundException e) {
+			throw new NotFoundException(e);
+		}
+
+		return packed instanceof Long ? ConnectionState.state((Long) packed) : super.readState(n);
+	}
+
+	@Override
+	void loadWalkableTargets(Node n, WalkTargets targets) {
+		long single;
+
+		try (Statement statement = bridge.get()) {
+			ReadOperations ops = statement.readOperations();
+
+			single = singleOut(ops, n.getId(), Kind.AUTHORED);
+
+			if (single == NONE) {
+				single = singleOut(ops, n.getId(), Kind.MANUAL);
+			}
+		} catch (EntityNotFoundException e) {
+			throw new NotFoundException(e);
+		}
+
+		if (single != NONE) {
+			targets.clear();
+			targets.add(single);
+		} else {
+			targets.share(Relationships.getRankedTargetIds(n));
+		}
+	}
+
+	/**
+	 * The end node id of nodeId's outgoing relationship of the kind in this
+	 * topic, NONE if it has none.  Only used for MANUAL and AUTHORED, which
+	 * don't depend on the generation.
+	 */
+	private long singleOut(ReadOperations ops, long nodeId, Kind kind) throws EntityNotFoundException {
+		int type = typeId(ops, kind);
+
+		if (type == StatementConstants.NO_SUCH_RELATIONSHIP_TYPE) {
+			return NONE;
+		}
+
+		RelationshipIterator relationships = ops.nodeGetRelationships(nodeId, Direction.OUTGOING, type);
+
+		while (relationships.hasNext()) {
+			long relationship = relationships.next();
+
+			if (isInTopic(ops, relationship)) {
+				ops.relationshipVisit(relationship, endNode);
+
+				return endNode.id;
+			}
+		}
+
+		return NONE;
+	}
+
+	private boolean isInTopic(ReadOperations ops, long relationship) throws EntityNotFoundException {
+		if (encoding == TopicEncoding.PER_TYPE) {
+			return true;
+		}
+
+		int key = topicKeyId(ops);
+
+		if (key == StatementConstants.NO_SUCH_PROPERTY_KEY) {
+			return false;
+		}
+
+		Object topic = ops.relationshipGetProperty(relationship, key);
+
+		return topic instanceof Long && (Long) topic == topicId;
+	}
+
+	private int typeId(ReadOperations ops, Kind kind) {
+		if (typeIds[kind.ordinal()] == StatementConstants.NO_SUCH_RELATIONSHIP_TYPE) {
+			typeIds[kind.ordinal()] = ops.relationshipTypeGetForName(encoding.type(kind, topicId, generation).name());
+		}
+
+		return typeIds[kind.ordinal()];
+	}
+
+	private int opinionLabelId(ReadOperations ops) {
+		if (opinionLabelId == StatementConstants.NO_SUCH_LABEL) {
+			opinionLabelId = ops.labelGetForName(Nodes.Labels.OPINION.name());
+		}
+
+		return opinionLabelId;
+	}
+
+	private int stateKeyId(ReadOperations ops) {
+		if (stateKeyId == StatementConstants.NO_SUCH_PROPERTY_KEY) {
+			stateKeyId = ops.propertyKeyGetForName(stateKey);
+		}
+
+		return stateKeyId;
+	}
+
+	private int topicKeyId(ReadOperations ops) {
+		if (topicKeyId == StatementConstants.NO_SUCH_PROPERTY_KEY) {
+			topicKeyId = ops.propertyKeyGetForName(TopicEncoding.TOPIC);
+		}
+
+		return topicKeyId;
+	}
+
+	// reused for every hop, so reading an end node allocates nothing
+	private static final class EndNode implements RelationshipVisitor<RuntimeException> {
+		private long id;
+
+		@Override
+		public void visit(long relationshipId, int typeId, long startNodeId, long endNodeId) {
+			id = endNodeId;
+		}
+	}
+}
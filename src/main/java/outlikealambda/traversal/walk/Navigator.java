@@ -1,44 +1,229 @@
 package outlikealambda.traversal.walk;
 
-import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.RelationshipType;
+import outlikealambda.traversal.InfluenceIndex;
 import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.RankedChange;
 import outlikealambda.traversal.Relationships;
-import outlikealambda.utils.Composables;
-import outlikealambda.utils.Optionals;
+import outlikealambda.traversal.ShadowRebuild;
+import outlikealambda.traversal.TopicEncoding;
+import outlikealambda.traversal.TopicEncoding.Kind;
+import outlikealambda.traversal.TopicRelationships;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
  * Reads and modifies the connections between nodes in a walk-based
  * graph
+ *
+ * The walkers (Blazer, the unwinders, Traversals) only use the Node-level
+ * methods, so subclasses can answer those from somewhere other than the store;
+ * see CompactNavigator.
+ *
+ * Connection state (CONNECTED, the state, influence and author properties,
+ * and the influence index) is read and written in one generation of the
+ * topic; see TopicEncoding.generation.  Unless one is given, it is the one
+ * live when the navigator is first used.
  */
 public class Navigator {
-	private final RelationshipType manualType;
-	private final RelationshipType authoredType;
-	private final RelationshipType rankedType;
-	private final RelationshipType connectedType;
+	private static final long CURRENT = -1;
 
+	private final long topicId;
+	private long generation;
+
+	// follows whichever generation is live, rather than one it was given
+	private final boolean live;
+
+	// resolved from the Topic node on first use; see TopicEncoding
+	private Keys keys;
+
+	// connection states set during the cascade, not yet written
+	private final Map<Node, Staged> staged = new HashMap<>();
+
+	// influence changes not yet carried up to the opinion
+	private final Map<Node, Long> pendingInfluence = new HashMap<>();
+	private int cascades = 0;
+
+	// bumped by invalidate; states staged in an earlier epoch of the cascade are stale
+	private int epoch = 0;
+
+	// authors whose entries in the influence index may be out of date
+	private final Set<Node> changedAuthors = new HashSet<>();
+
+	// nodes whose connection was set or cleared, so their author may have changed
+	private final Set<Node> changedConnections = new HashSet<>();
+
+	// reused by dependsOn
+	private final WalkTargets dependencies = new WalkTargets();
+
+	/**
+	 * Reads and writes the generation of the topic which is live when the
+	 * navigator is first used
+	 */
 	public Navigator(long topicId) {
-		this.manualType = Relationships.Types.manual(topicId);
-		this.authoredType = Relationships.Types.authored(topicId);
-		this.rankedType = Relationships.Types.ranked();
-		this.connectedType = Relationships.Types.connected(topicId);
+		this(topicId, CURRENT);
+	}
+
+	/**
+	 * Reads and writes the given generation of the topic, live or not
+	 */
+	public Navigator(long topicId, long generation) {
+		this.topicId = topicId;
+		this.generation = generation;
+		this.live = generation == CURRENT;
+	}
+
+	/**
+	 * Locks the topic against a rebuild for the rest of the transaction (see
+	 * ShadowRebuild.lockForChange), then makes sure this reads and writes the
+	 * generation which is live once the lock is held.  Called before changing
+	 * the topic; navigators given a generation are left as they are.
+	 */
+	public void lockForChanges(GraphDatabaseService gdb) {
+		if (!live) {
+			return;
+		}
+
+		ShadowRebuild.lockForChange(gdb, topicId);
+
+		if (keys != null && keys.generation != TopicEncoding.generation(gdb, topicId)) {
+			keys = null;
+			generation = CURRENT;
+		}
+	}
+
+	/**
+	 * The generation this navigator reads and writes, resolving it if it
+	 * hasn't been used yet
+	 */
+	public long getGeneration(GraphDatabaseService gdb) {
+		return keys(gdb).generation;
+	}
+
+	private Keys keys(GraphDatabaseService gdb) {
+		if (keys == null) {
+			if (generation == CURRENT) {
+				generation = TopicEncoding.generation(gdb, topicId);
+			}
+
+			keys = new Keys(TopicEncoding.of(gdb, topicId), topicId, generation);
+		}
+
+		return keys;
+	}
+
+	private Keys keys(Node n) {
+		return keys != null ? keys : keys(n.getGraphDatabase());
+	}
+
+	private TopicRelationships topic(Node n) {
+		return keys(n).relationships;
+	}
+
+	// everything named after the topic and generation
+	private static final class Keys {
+		private final long generation;
+		private final TopicRelationships relationships;
+		private final InfluenceIndex influenceIndex;
+		private final String influence;
+		private final String author;
+		private final String state;
+
+		private Keys(TopicEncoding encoding, long topicId, long generation) {
+			this.generation = generation;
+			this.relationships = new TopicRelationships(encoding, topicId, generation);
+			this.influenceIndex = new InfluenceIndex(topicId, generation);
+			this.influence = Nodes.Fields.influence(topicId, generation);
+			this.author = Nodes.Fields.author(topicId, generation);
+			this.state = Nodes.Fields.state(topicId, generation);
+		}
 	}
 
 	public boolean isConnected(Node n) {
-		return n.hasRelationship(connectedType, Direction.OUTGOING);
+		return getState(n) == ConnectionState.CONNECTED;
 	}
 
 	public boolean isDisjoint(Node n) {
-		return Nodes.Fields.isDisjoint(n);
+		return getState(n) == ConnectionState.DISJOINT;
+	}
+
+	/**
+	 * The position of n's connection in its walk order; -1 if n isn't
+	 * connected, or the position wasn't recorded
+	 */
+	public int getConnectedIndex(Node n) {
+		Staged pending = staged.get(n);
+
+		if (pending != null && pending.epoch == epoch) {
+			return pending.state == ConnectionState.CONNECTED ? pending.index : -1;
+		}
+
+		if (epoch != 0) {
+			return -1;
+		}
+
+		return Optional.ofNullable((Long) n.getProperty(keys(n).state, null))
+				.map(ConnectionState::index)
+				.orElse(-1);
+	}
+
+	private long getState(Node n) {
+		Staged pending = staged.get(n);
+
+		if (pending != null && pending.epoch == epoch) {
+			return pending.state;
+		}
+
+		return epoch == 0 ? readState(n) : ConnectionState.UNKNOWN;
+	}
+
+	/**
+	 * The state as written, ignoring anything staged.  The legacy reads only
+	 * apply to generation 0: later generations were written with states.
+	 */
+	long readState(Node n) {
+		Keys current = keys(n);
+		Long packed = (Long) n.getProperty(current.state, null);
+
+		if (packed != null) {
+			return ConnectionState.state(packed);
+		}
+
+		if (current.generation != 0) {
+			return ConnectionState.UNKNOWN;
+		}
+
+		if (current.relationships.hasOut(n, Kind.CONNECTED)) {
+			return ConnectionState.CONNECTED;
+		}
+
+		return Nodes.Fields.isDisjoint(n) ? ConnectionState.DISJOINT : ConnectionState.UNKNOWN;
+	}
+
+	// written in place, and only if it changed
+	private void setState(Node n, long packed) {
+		String stateKey = keys(n).state;
+		Object current = n.getProperty(stateKey, null);
+
+		if (!(current instanceof Long) || (Long) current != packed) {
+			n.setProperty(stateKey, packed);
+		}
 	}
 
 	public boolean isAuthor(Node n) {
-		return n.hasRelationship(authoredType, Direction.OUTGOING);
+		return topic(n).hasOut(n, Kind.AUTHORED);
 	}
 
 	public boolean isOpinion(Node n) {
@@ -47,69 +232,597 @@ public class Navigator {
 
 	public Node getOpinion(Node author) {
 		return Optional.of(author)
-				.map(Relationships.getSingleOut(authoredType))
+				.map(topic(author).singleOut(Kind.AUTHORED))
 				.map(Relationship::getEndNode)
 				.orElseThrow(() -> new IllegalArgumentException("Don't call getOpinion unless you're sure you have an author"));
 	}
 
-	// TODO: optimize
-	// Is there a way to avoid setting/removing a property on each node?
 	public void clearConnectionState(Node n) {
-		Optionals.ifElse(
-				Optional.of(n).map(Relationships.getSingleOut(connectedType)),
-				Relationship::delete,
-				() -> Nodes.Fields.setDisjoint(n, false)
-		);
+		stage(n, ConnectionState.UNKNOWN, null, -1);
 	}
 
 	public void setConnected(Node source, Node target) {
-		source.createRelationshipTo(target, connectedType);
+		setConnected(source, target, -1);
+	}
+
+	/**
+	 * Connects source through target, the index-th of its walkable targets.
+	 * Replaces any other connection; a connection to the same target is kept
+	 * as it is.
+	 */
+	public void setConnected(Node source, Node target, int index) {
+		stage(source, ConnectionState.CONNECTED, target, index);
 	}
 
 	public void setDisjoint(Node n) {
-		Nodes.Fields.setDisjoint(n, true);
+		stage(n, ConnectionState.DISJOINT, null, -1);
+	}
+
+	/**
+	 * Inside a cascade, state changes are only recorded: isConnected and
+	 * isDisjoint see them straight away, but nothing is written until the
+	 * outermost cascade ends, when each changed node gets its final state
+	 * once.  Outside of a cascade they're written immediately.
+	 *
+	 * A node staged again in the same cascade reuses its Staged.
+	 */
+	private void stage(Node n, long state, Node target, int index) {
+		if (cascades == 0) {
+			write(n, state, target, index);
+			settle();
+			return;
+		}
+
+		Staged pending = staged.get(n);
+
+		if (pending == null) {
+			pending = new Staged();
+			staged.put(n, pending);
+		}
+
+		pending.set(state, target, index, epoch);
+	}
+
+	/**
+	 * Writes the staged states in node id order, so concurrent cascades take
+	 * their locks in the same order.  Nodes which end up where they started
+	 * cost no writes.
+	 */
+	private void applyStaged() {
+		List<Map.Entry<Node, Staged>> ordered = new ArrayList<>(staged.entrySet());
+		ordered.sort(Comparator.comparingLong(entry -> entry.getKey().getId()));
+
+		staged.clear();
+
+		for (Map.Entry<Node, Staged> entry : ordered) {
+			Staged pending = entry.getValue();
+
+			write(entry.getKey(), pending.state, pending.target, pending.index);
+		}
+	}
+
+	private void write(Node n, long state, Node target, int index) {
+		if (state == ConnectionState.CONNECTED) {
+			writeConnected(n, target);
+			setState(n, ConnectionState.connected(index));
+		} else {
+			clearConnection(n);
+			setState(n, state);
+		}
+	}
+
+	private void writeConnected(Node source, Node target) {
+		Relationship existing = getConnectedOut(source);
+
+		if (existing != null && existing.getEndNode().equals(target)) {
+			return;
+		}
+
+		clearConnection(source);
+
+		topic(source).create(source, target, Kind.CONNECTED);
+
+		if (isOpinion(target)) {
+			changedAuthors.add(source);
+		}
+
+		changedConnections.add(source);
+
+		addInfluence(target, getInfluence(source));
+	}
+
+	private void clearConnection(Node n) {
+		Relationship connection = getConnectedOut(n);
+
+		if (connection == null) {
+			return;
+		}
+
+		Node target = connection.getEndNode();
+
+		connection.delete();
+
+		if (isOpinion(target)) {
+			changedAuthors.add(n);
+		}
+
+		changedConnections.add(n);
+
+		// n, and everything connected through it, leaves the path
+		addInfluence(target, -getInfluence(n));
+	}
+
+	private static final class Staged {
+		private long state;
+		private Node target;
+		private int index;
+		private int epoch;
+
+		private void set(long state, Node target, int index, int epoch) {
+			this.state = state;
+			this.target = target;
+			this.index = index;
+			this.epoch = epoch;
+		}
+	}
+
+	/**
+	 * The number of nodes connected through n, n included.
+	 *
+	 * Kept up to date as connections are set and cleared, so this is a single
+	 * property read; a node without a count has never had anything connect
+	 * through it.  Counts written during a cascade only land when it ends.
+	 */
+	public long getInfluence(Node n) {
+		return (long) n.getProperty(keys(n).influence, 1L);
+	}
+
+	/**
+	 * The author n is connected through, read from n; empty if n isn't
+	 * connected, or was connected before authors were kept.
+	 */
+	public Optional<Node> getResolvedAuthor(Node n) {
+		return Optional.ofNullable((Long) n.getProperty(keys(n).author, null))
+				.map(n.getGraphDatabase()::getNodeById);
+	}
+
+	/**
+	 * Stores a count made by walking the connections, and resolves n's author;
+	 * for topics whose connections were made before either was kept.
+	 */
+	public void seed(Node n, long influence) {
+		n.setProperty(keys(n).influence, influence);
+
+		changedAuthors.add(n);
+		changedConnections.add(n);
+		settleUnlessCascading();
+	}
+
+	/**
+	 * Holds connection, influence and author changes until the matching
+	 * endCascade.
+	 *
+	 * A cascade connects nodes one at a time, and carrying each change straight
+	 * up to the opinion (or down to the sources) costs the length of the path
+	 * every time.  When the outermost cascade ends, each node's final state is
+	 * written once, and the held changes are settled along the final paths.
+	 *
+	 * Connections read during a cascade (getConnectionOut and the like) are
+	 * as they were when it began; only isConnected and isDisjoint are current.
+	 */
+	public void beginCascade() {
+		cascades++;
+	}
+
+	public void endCascade() {
+		if (--cascades == 0) {
+			applyStaged();
+			epoch = 0;
+			settle();
+		}
+	}
+
+	/**
+	 * Makes every connection state in the topic unknown until the cascade
+	 * ends, except those set from here on, in O(1): staged states are stamped
+	 * with the epoch they were set in, and this only starts a new one.  Walks
+	 * then recompute whichever nodes they reach, instead of everything being
+	 * cleared first.
+	 *
+	 * Nothing is written for the invalidation itself; when the cascade ends,
+	 * the nodes set during it are written, and the rest keep their states.
+	 */
+	public void invalidate() {
+		if (cascades == 0) {
+			throw new IllegalStateException("invalidate only lasts for a cascade; begin one first");
+		}
+
+		epoch++;
+	}
+
+	private void settleUnlessCascading() {
+		if (cascades == 0) {
+			settle();
+		}
+	}
+
+	private void settle() {
+		carryInfluence();
+		resolveAuthors();
+	}
+
+	private void addInfluence(Node target, long delta) {
+		pendingInfluence.merge(target, delta, Long::sum);
+	}
+
+	/**
+	 * Adds each pending delta to its node, and every node that one is
+	 * connected through, stopping short of the opinion.
+	 *
+	 * The deltas were measured with counts from before the cascade, so they
+	 * are carried along the connections as they stand now.  Children are
+	 * visited before their parents, and each node is written once.
+	 */
+	private void carryInfluence() {
+		Map<Node, Node> parents = new HashMap<>();
+		Map<Node, Integer> children = new HashMap<>();
+
+		for (Node pending : pendingInfluence.keySet()) {
+			Node current = pending;
+
+			while (current != null && !isOpinion(current) && !parents.containsKey(current)) {
+				Optional<Node> next = Optional.ofNullable(getConnectedOut(current))
+						.map(Relationship::getEndNode);
+				Node parent = next
+						.filter(n -> !isOpinion(n))
+						.orElse(null);
+
+				parents.put(current, parent);
+
+				if (next.filter(this::isOpinion).isPresent()) {
+					changedAuthors.add(current);
+				}
+
+				children.putIfAbsent(current, 0);
+
+				if (parent != null) {
+					children.merge(parent, 1, Integer::sum);
+				}
+
+				current = parent;
+			}
+		}
+
+		Deque<Node> ready = new ArrayDeque<>();
+		children.forEach((node, count) -> {
+			if (count == 0) {
+				ready.add(node);
+			}
+		});
+
+		int carried = 0;
+
+		while (!ready.isEmpty()) {
+			Node current = ready.remove();
+			Node parent = parents.get(current);
+			long delta = pendingInfluence.getOrDefault(current, 0L);
+
+			carried++;
+
+			if (delta != 0) {
+				current.setProperty(keys(current).influence, getInfluence(current) + delta);
+
+				if (parent != null) {
+					pendingInfluence.merge(parent, delta, Long::sum);
+				}
+			}
+
+			if (parent != null && children.merge(parent, -1, Integer::sum) == 0) {
+				ready.add(parent);
+			}
+		}
+
+		pendingInfluence.clear();
+
+		if (carried != parents.size()) {
+			throw new IllegalStateException("connections form a cycle; influence can't be carried");
+		}
+
+		changedAuthors.forEach(this::indexAuthor);
+		changedAuthors.clear();
+	}
+
+	/**
+	 * Keeps n's entry in the influence index in step with the connection
+	 * into its opinion
+	 */
+	private void indexAuthor(Node n) {
+		boolean connectsToOpinion = Optional.ofNullable(getConnectedOut(n))
+				.map(Relationship::getEndNode)
+				.filter(this::isOpinion)
+				.isPresent();
+
+		if (connectsToOpinion) {
+			keys(n).influenceIndex.put(n, getInfluence(n));
+		} else {
+			keys(n).influenceIndex.remove(n);
+		}
+	}
+
+	/**
+	 * Points every node connected through a changed connection at its author.
+	 *
+	 * Stops wherever a node already points at the right author: the nodes
+	 * connected through it were settled before, or changed themselves.
+	 */
+	private void resolveAuthors() {
+		Map<Node, Node> authors = new HashMap<>();
+
+		for (Node changed : changedConnections) {
+			Node author = findAuthor(changed, authors);
+
+			if (author == null) {
+				changed.removeProperty(keys(changed).author);
+				continue;
+			}
+
+			Deque<Node> remaining = new ArrayDeque<>();
+			remaining.push(changed);
+
+			while (!remaining.isEmpty()) {
+				Node current = remaining.pop();
+
+				String authorKey = keys(current).author;
+
+				if (!Long.valueOf(author.getId()).equals(current.getProperty(authorKey, null))) {
+					current.setProperty(authorKey, author.getId());
+
+					getConnectedSources(current).forEach(remaining::push);
+				}
+			}
+		}
+
+		changedConnections.clear();
+	}
+
+	/**
+	 * Walks the connections up from n to the node connected to the opinion,
+	 * remembering the answer for every node on the way; null if the walk
+	 * ends without reaching an opinion.
+	 */
+	private Node findAuthor(Node n, Map<Node, Node> authors) {
+		List<Node> path = new ArrayList<>();
+		Node current = n;
+		Node author = null;
+
+		while (current != null) {
+			if (authors.containsKey(current)) {
+				author = authors.get(current);
+				break;
+			}
+
+			path.add(current);
+
+			Node next = Optional.ofNullable(getConnectedOut(current))
+					.map(Relationship::getEndNode)
+					.orElse(null);
+
+			if (next != null && isOpinion(next)) {
+				author = current;
+				break;
+			}
+
+			current = next;
+		}
+
+		for (Node walked : path) {
+			authors.put(walked, author);
+		}
+
+		return author;
+	}
+
+	/**
+	 * Whether a walk from the source of a ranked change could end somewhere
+	 * new in this topic.
+	 *
+	 * Ranked targets are only walked without a manual or authored connection.
+	 * Targets ahead of the current connection were walked and rejected, and
+	 * stay rejected; any other target which is now ahead of it can only take
+	 * over if it's connected.  A source without a connection rejected all of
+	 * its previous targets.
+	 */
+	public boolean isAffectedBy(RankedChange change) {
+		Node source = change.getSource();
+
+		if (change.isEmpty() || isAuthor(source) || getManualOut(source) != null) {
+			return false;
+		}
+
+		Node current = Optional.ofNullable(getConnectedOut(source))
+				.map(Relationship::getEndNode)
+				.orElse(null);
+
+		List<Node> previous = change.getPrevious();
+		int connectedAt = current == null ? previous.size() : previous.indexOf(current);
+
+		if (connectedAt < 0) {
+			// connected to something which wasn't ranked; walk again to be safe
+			return true;
+		}
+
+		Set<Node> rejected = new HashSet<>(previous.subList(0, connectedAt));
+
+		for (Node target : change.getCurrent()) {
+			if (target.equals(current)) {
+				return false;
+			}
+
+			if (!rejected.contains(target) && isConnected(target)) {
+				return true;
+			}
+		}
+
+		// the current connection is no longer ranked
+		return current != null;
+	}
+
+	/**
+	 * Records where the source's ranked connection now is in its ranked list,
+	 * after a change which doesn't affect it (see isAffectedBy).  The target
+	 * stays the same, but the targets around it may have moved, and dependsOn
+	 * prunes by that position.  A connection which is no longer ranked gets
+	 * no position, so it depends on every target.
+	 */
+	public void reindex(RankedChange change) {
+		Node source = change.getSource();
+
+		if (change.isEmpty() || isAuthor(source) || getManualOut(source) != null || !isConnected(source)) {
+			return;
+		}
+
+		Relationship connected = getConnectedOut(source);
+
+		if (connected == null) {
+			return;
+		}
+
+		int index = change.getCurrent().indexOf(connected.getEndNode());
+
+		if (index != getConnectedIndex(source)) {
+			setConnected(source, connected.getEndNode(), index);
+		}
 	}
 
 	public void setTarget(Node source, Node target) {
-		Relationships.clearAndLinkOut(source, target, manualType);
+		topic(source).clearAndLinkOut(source, target, Kind.MANUAL);
 	}
 
 	public void setOpinion(Node author, Node opinion) {
-		Relationships.clearAndLinkOut(author, opinion, authoredType);
+		topic(author).clearAndLinkOut(author, opinion, Kind.AUTHORED);
+	}
+
+	// single outgoing relationships, null if missing; used to load snapshots
+
+	Relationship getManualOut(Node n) {
+		return topic(n).getSingleOut(n, Kind.MANUAL);
+	}
+
+	Relationship getAuthoredOut(Node n) {
+		return topic(n).getSingleOut(n, Kind.AUTHORED);
+	}
+
+	Relationship getConnectedOut(Node n) {
+		return topic(n).getSingleOut(n, Kind.CONNECTED);
 	}
 
 	public Relationship getConnectionOut(Node n) {
-		return Optionals.first(n,
-				Stream.of(Relationships.getSingleOut(connectedType), Relationships.getSingleOut(manualType)))
-				.orElseThrow(() -> new IllegalArgumentException(
-						"getConnectionOut must have a connection"
-				));
+		Relationship connection = getConnectedOut(n);
+
+		if (connection == null) {
+			connection = getManualOut(n);
+		}
+
+		if (connection == null) {
+			throw new IllegalArgumentException("getConnectionOut must have a connection");
+		}
+
+		return connection;
+	}
+
+	public Node getConnectedTarget(Node n) {
+		return getConnectionOut(n).getEndNode();
 	}
 
 	public Stream<Relationship> getConnectionsIn(Node n) {
-		return Composables.goStream(n.getRelationships(Direction.INCOMING, connectedType));
+		return topic(n).getIn(n, Kind.CONNECTED);
+	}
+
+	public Stream<Node> getConnectedSources(Node n) {
+		return getConnectionsIn(n).map(Relationship::getStartNode);
 	}
 
 	public Stream<Relationship> getRankedAndManualOut(Node n) {
-		return Composables.goStream(n.getRelationships(Direction.OUTGOING, rankedType, manualType));
+		return Stream.concat(Relationships.getRankedOutgoing(n), topic(n).getOut(n, Kind.MANUAL));
 	}
 
 	public Stream<Relationship> getRankedAndManualIn(Node n) {
-		return Composables.goStream(n.getRelationships(Direction.INCOMING, manualType, rankedType));
+		return Stream.concat(topic(n).getIn(n, Kind.MANUAL), Relationships.getRankedIncoming(n));
+	}
+
+	/**
+	 * The nodes which may walk through n: ranked or manual sources, whichever
+	 * way their ranked lists are encoded
+	 */
+	public Stream<Node> getUpstream(Node n) {
+		return Stream.concat(
+				getRankedAndManualIn(n).map(Relationship::getStartNode),
+				Relationships.getArrayRankedSources(n));
 	}
 
 	public Stream<Relationship> getWalkableOutgoing(Node n) {
-		return Optionals.first(
-				n,
-				Stream.of(
-						Relationships.getSingleOut(authoredType),
-						Relationships.getSingleOut(manualType)))
-				.map(Stream::of)
-				.orElseGet(() -> getRankedByRank(n));
-	}
-
-	private Stream<Relationship> getRankedByRank(Node n) {
-		return Composables.goStream(n.getRelationships(rankedType, Direction.OUTGOING))
-				.sorted(Relationships.rankComparator);
+		Relationship single = getSingleWalkable(n);
+
+		return single != null ? Stream.of(single) : Relationships.getRankedByRank(n);
+	}
+
+	public Stream<Node> getWalkableTargets(Node n) {
+		Relationship single = getSingleWalkable(n);
+
+		return single != null ? Stream.of(single.getEndNode()) : getRankedTargets(n);
+	}
+
+	/**
+	 * Fills targets with the ids of getWalkableTargets, in the same order.
+	 * This is what Blazer walks: beyond what the store allocates for its own
+	 * reads, it allocates nothing.
+	 */
+	void loadWalkableTargets(Node n, WalkTargets targets) {
+		Relationship single = getSingleWalkable(n);
+
+		if (single != null) {
+			targets.clear();
+			targets.add(single.getEndNode().getId());
+		} else {
+			targets.share(Relationships.getRankedTargetIds(n));
+		}
+	}
+
+	/**
+	 * Whether source's walk may reach target: target is one of its walkable
+	 * targets, no later than the one source is connected through.  Targets
+	 * after the connection were never walked, so whatever becomes of them,
+	 * source stays connected as it is.  Connections without a recorded
+	 * index are assumed to depend on every target.
+	 */
+	public boolean dependsOn(Node source, Node target) {
+		int connectedIndex = isConnected(source) ? getConnectedIndex(source) : -1;
+		long targetId = target.getId();
+
+		loadWalkableTargets(source, dependencies);
+
+		for (int index = 0; dependencies.hasNext(); index++) {
+			if (dependencies.next() == targetId) {
+				return true;
+			}
+
+			if (index == connectedIndex) {
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	// an opinion, otherwise a manual target; null if n walks its ranked targets
+	private Relationship getSingleWalkable(Node n) {
+		Relationship single = getAuthoredOut(n);
+
+		return single != null ? single : getManualOut(n);
+	}
+
+	// ranked doesn't depend on the topic, so these come from the shared cache
+	Stream<Node> getRankedTargets(Node n) {
+		return Relationships.getRankedTargets(n);
 	}
 }
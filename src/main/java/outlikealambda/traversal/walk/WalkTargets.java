@@ -0,0 +1,50 @@
+package outlikealambda.traversal.walk;
+
+/**
+ * The walkable target ids of one node, in walk order.
+ *
+ * Each Blazer frame keeps one of these and refills it for every node it
+ * walks, so a hop allocates nothing.  Ranked ids can be shared straight from
+ * the caller's array (which is never written); anything else is copied into
+ * a buffer owned by the instance, which only grows.
+ */
+final class WalkTargets {
+	private long[] owned = new long[4];
+	private long[] ids = owned;
+	private int size = 0;
+	private int next = 0;
+
+	void clear() {
+		ids = owned;
+		size = 0;
+		next = 0;
+	}
+
+	void add(long id) {
+		if (size == owned.length) {
+			long[] grown = new long[owned.length * 2];
+			System.arraycopy(owned, 0, grown, 0, size);
+			owned = grown;
+		}
+
+		ids = owned;
+		owned[size++] = id;
+	}
+
+	/**
+	 * Reads the targets from ids, which must not change while they're walked
+	 */
+	void share(long[] ids) {
+		this.ids = ids;
+		this.size = ids.length;
+		this.next = 0;
+	}
+
+	boolean hasNext() {
+		return next < size;
+	}
+
+	long next() {
+		return ids[next++];
+	}
+}
@@ -0,0 +1,67 @@
+package outlikealambda.utils;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A first in, first out queue of longs, kept in a ring buffer which doubles
+ * when full.  Nothing is boxed, and clear keeps the buffer.
+ */
+public final class LongQueue {
+	private long[] buffer;
+	private int head = 0;
+	private int size = 0;
+
+	public LongQueue() {
+		this(16);
+	}
+
+	public LongQueue(int capacity) {
+		this.buffer = new long[Math.max(1, capacity)];
+	}
+
+	public void add(long value) {
+		if (size == buffer.length) {
+			grow();
+		}
+
+		buffer[(head + size) % buffer.length] = value;
+		size++;
+	}
+
+	public long poll() {
+		if (size == 0) {
+			throw new NoSuchElementException("LongQueue is empty");
+		}
+
+		long value = buffer[head];
+
+		head = (head + 1) % buffer.length;
+		size--;
+
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	private void grow() {
+		long[] grown = new long[buffer.length * 2];
+
+		for (int i = 0; i < size; i++) {
+			grown[i] = buffer[(head + i) % buffer.length];
+		}
+
+		buffer = grown;
+		head = 0;
+	}
+}
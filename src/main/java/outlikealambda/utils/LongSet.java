@@ -0,0 +1,121 @@
+package outlikealambda.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative longs, such as node ids, open addressed with linear
+ * probing.  Nothing is boxed, and clear keeps the table, so one set can be
+ * reused from walk to walk without allocating.
+ *
+ * The slots in use are kept alongside the table, so clear costs the size of
+ * the set rather than the size of the table: a set grown by one long walk
+ * stays cheap to clear for the short walks after it.
+ */
+public final class LongSet {
+	private static final long EMPTY = -1;
+
+	private long[] table;
+	// the first size entries are the slots holding a value
+	private int[] used;
+	private int mask;
+	private int size = 0;
+
+	public LongSet() {
+		this(16);
+	}
+
+	public LongSet(int expected) {
+		allocate(tableSize(expected));
+	}
+
+	/**
+	 * @return false if value was already in the set
+	 */
+	public boolean add(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("LongSet only holds non-negative values");
+		}
+
+		if ((size + 1) * 2 > table.length) {
+			grow();
+		}
+
+		int slot = slotOf(value);
+
+		while (table[slot] != EMPTY) {
+			if (table[slot] == value) {
+				return false;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = value;
+		used[size++] = slot;
+
+		return true;
+	}
+
+	public boolean contains(long value) {
+		int slot = slotOf(value);
+
+		while (table[slot] != EMPTY) {
+			if (table[slot] == value) {
+				return true;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			table[used[i]] = EMPTY;
+		}
+
+		size = 0;
+	}
+
+	private int slotOf(long value) {
+		long hash = value * 0x9E3779B97F4A7C15L;
+
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow() {
+		long[] previous = table;
+
+		allocate(previous.length * 2);
+		size = 0;
+
+		for (long value : previous) {
+			if (value != EMPTY) {
+				add(value);
+			}
+		}
+	}
+
+	private void allocate(int length) {
+		table = new long[length];
+		// add grows the table before it is more than half full
+		used = new int[length / 2];
+		mask = length - 1;
+		Arrays.fill(table, EMPTY);
+	}
+
+	private static int tableSize(int expected) {
+		int length = Math.max(8, expected * 2);
+
+		return Integer.highestOneBit(length - 1) << 1;
+	}
+}
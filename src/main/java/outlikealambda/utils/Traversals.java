@@ -1,32 +1,104 @@
 package outlikealambda.utils;
 
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
 import outlikealambda.traversal.walk.Navigator;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 public final class Traversals {
 
+	/**
+	 * counts the target, and every node connected through it.
+	 * <p>
+	 * connections can't form cycles, so no node is counted twice
+	 */
 	public static int measureInfluence(Navigator navigator, Node target) {
-		return 1 + navigator.getConnectionsIn(target)
-				.map(Relationship::getStartNode)
-				.mapToInt(source -> measureInfluence(navigator, source))
-				.sum();
+		int influence = 0;
+		LinkedList<Node> remaining = new LinkedList<>();
+
+		remaining.push(target);
+
+		while (!remaining.isEmpty()) {
+			Node current = remaining.pop();
+
+			influence++;
+
+			navigator.getConnectedSources(current)
+					.forEach(remaining::push);
+		}
+
+		return influence;
+	}
+
+	/**
+	 * counts each of the targets in a single pass: a node's count is the sum
+	 * of its sources' counts, so every node connected through any of the
+	 * targets is counted once, however many of the targets it is under.
+	 */
+	public static Map<Node, Long> measureInfluence(Navigator navigator, Collection<Node> targets) {
+		Map<Node, Long> counted = new HashMap<>();
+		Deque<Node> remaining = new ArrayDeque<>();
+
+		for (Node target : targets) {
+			remaining.push(target);
+
+			while (!remaining.isEmpty()) {
+				Node current = remaining.peek();
+
+				if (counted.containsKey(current)) {
+					remaining.pop();
+					continue;
+				}
+
+				List<Node> uncounted = navigator.getConnectedSources(current)
+						.filter(source -> !counted.containsKey(source))
+						.collect(Collectors.toList());
+
+				if (uncounted.isEmpty()) {
+					// every source is counted; come back up
+					remaining.pop();
+					counted.put(current, 1 + navigator.getConnectedSources(current)
+							.mapToLong(counted::get)
+							.sum());
+				} else {
+					uncounted.forEach(remaining::push);
+				}
+			}
+		}
+
+		return targets.stream()
+				.collect(Collectors.toMap(Function.identity(), counted::get, (first, second) -> first));
 	}
 
 	/**
 	 * finds the author for a given connected node.
 	 * <p>
-	 * throws an IllegalArgumentException if node is not connected
+	 * a single read where the author has been resolved; otherwise walks the
+	 * connections.  throws an IllegalArgumentException if node is not connected
 	 */
 	public static Node follow(Navigator navigator, Node source) {
-		if (navigator.isAuthor(source)) {
-			return source;
+		Optional<Node> resolved = navigator.getResolvedAuthor(source);
+
+		if (resolved.isPresent()) {
+			return resolved.get();
+		}
+
+		Node current = source;
+
+		while (!navigator.isAuthor(current)) {
+			current = navigator.getConnectedTarget(current);
 		}
 
-		return Composables.asFunction(navigator::getConnectionOut)
-				.andThen(Relationship::getEndNode)
-				.andThen(n -> follow(navigator, n))
-				.apply(source);
+		return current;
 	}
 
 	private Traversals() {}
@@ -8,14 +8,33 @@ import org.neo4j.driver.v1.GraphDatabase;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.exceptions.ClientException;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
 import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.Nodes;
 import outlikealambda.traversal.TestUtils;
+import outlikealambda.traversal.walk.Navigator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static outlikealambda.traversal.TestUtils.containsFriendAuthorNameCombo;
 import static outlikealambda.traversal.TestUtils.friendIsInfluencer;
 
@@ -23,6 +42,8 @@ public class ProceduresTest {
 	@Rule
 	public Neo4jRule neo4j = new Neo4jRule()
 			.withProcedure(DirtyConnectivity.class)
+			.withProcedure(Maintenance.class)
+			.withProcedure(Migrations.class)
 			.withProcedure(Traverse.class);
 
 	@Test
@@ -132,6 +153,951 @@ public class ProceduresTest {
 			assertTrue(friendIsInfluencer("ll", results));
 		}
 	}
+
+	@Test
+	public void testBatchMatchesSingleCalls() {
+		String klb = "klb";
+		String mb = "mb";
+		String ng = "ng";
+		String sr = "sr";
+		String ll = "ll";
+		String o1 = "opinion1";
+		String o2 = "opinion2";
+
+		String create = TestUtils.createWalkable(0)
+				.addPerson(klb, 1)
+				.addPerson(mb, 2)
+				.addPerson(ng, 3)
+				.addPerson(sr, 4)
+				.addPerson(ll, 5)
+				.addOpinion(o1, 1)
+				.addOpinion(o2, 2)
+				.connectRanked(klb, sr, 0)
+				.connectRanked(klb, ll, 1)
+				.connectRanked(mb, sr, 0)
+				.connectRanked(mb, ng, 1)
+				.connectRanked(mb, ll, 2)
+				.connectRanked(mb, klb, 3)
+				.connectRanked(ng, ll, 0)
+				.connectRanked(ng, sr, 1)
+				.connectRanked(sr, ng, 0)
+				.connectRanked(sr, klb, 1)
+				.connectRanked(sr, ll, 2)
+				.connectRanked(ll, ng, 0)
+				.build();
+
+		// the same changes, one call each, on a graph of their own
+		try (
+				ServerControls singles = TestServerBuilders.newInProcessBuilder()
+						.withProcedure(DirtyConnectivity.class)
+						.withProcedure(Traverse.class)
+						.newServer();
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Driver singlesDriver = GraphDatabase.driver(singles.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session();
+				Session single = singlesDriver.session()
+		) {
+			session.run(create);
+			single.run(create);
+
+			// void
+			session.run("CALL dirty.batch.apply(0, [" +
+					"{op: 'opinion.set', userId: 1, opinionId: 1}," +
+					"{op: 'opinion.set', userId: 5, opinionId: 2}," +
+					"{op: 'target.set', userId: 2, targetId: 5}," +
+					"{op: 'opinion.clear', userId: 1}," +
+					"{op: 'opinion.set', userId: 1, opinionId: 1}" +
+					"])");
+
+			single.run("CALL dirty.opinion.set(1, 1, 0)");
+			single.run("CALL dirty.opinion.set(5, 2, 0)");
+			single.run("CALL dirty.target.set(2, 5, 0)");
+			single.run("CALL dirty.opinion.clear(1, 0)");
+			single.run("CALL dirty.opinion.set(1, 1, 0)");
+
+			List<Record> results = session.run("CALL friend.author(2, 0)").list();
+
+			assertEquals(4, results.size());
+
+			assertTrue(containsFriendAuthorNameCombo("ll", "ll", results));
+			assertTrue(containsFriendAuthorNameCombo("sr", "ll", results));
+			assertTrue(containsFriendAuthorNameCombo("klb", "klb", results));
+			assertTrue(friendIsInfluencer("ll", results));
+
+			for (long userId = 1; userId <= 5; userId++) {
+				assertEquals(friendAuthors(single, userId), friendAuthors(session, userId));
+				assertEquals(influence(single, userId), influence(session, userId));
+			}
+		}
+	}
+
+	private static Set<Map<String, Object>> friendAuthors(Session session, long userId) {
+		return session.run("CALL friend.author(" + userId + ", 0)").list().stream()
+				.map(Record::asMap)
+				.collect(toSet());
+	}
+
+	@Test
+	public void testParallelRankedSet() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o1 = "opinion1";
+			String o2 = "opinion2";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addTopic(1)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o1, 1)
+					.addOpinion(o2, 2)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(klb, ll, 1)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(mb, ll, 2)
+					.connectRanked(mb, klb, 3)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(ng, sr, 1)
+					.connectRanked(sr, ng, 0)
+					.connectRanked(sr, klb, 1)
+					.connectRanked(sr, ll, 2)
+					.connectRanked(ll, ng, 0)
+					.build();
+
+			session.run(create);
+
+			// void
+			session.run("CALL dirty.opinion.set(1, 1, 0)");
+			session.run("CALL dirty.opinion.set(5, 2, 1)");
+
+			Record summary = session.run("CALL dirty.ranked.set.parallel(2, [3, 1], 2)").single();
+
+			assertEquals(2, summary.get("topics").asLong());
+			assertEquals(0, summary.get("skipped").asLong());
+			assertEquals(2, summary.get("recomputed").asLong());
+			assertEquals(0, summary.get("failed").asLong());
+
+			// topic 0: ng -> ll -> ng cycles, so mb falls through to klb
+			List<Record> topic0 = session.run("CALL friend.author(2, 0)").list();
+			assertEquals(2, topic0.size());
+			assertTrue(friendIsInfluencer("klb", topic0));
+
+			// topic 1: ng -> ll
+			List<Record> topic1 = session.run("CALL friend.author(2, 1)").list();
+			assertEquals(2, topic1.size());
+			assertTrue(containsFriendAuthorNameCombo("ng", "ll", topic1));
+			assertTrue(friendIsInfluencer("ng", topic1));
+		}
+	}
+
+	@Test
+	public void testParallelRankedSetRefusesEarlierWrites() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson("a", 1)
+					.addPerson("b", 2)
+					.build();
+
+			session.run(create);
+
+			try (Transaction tx = session.beginTransaction()) {
+				tx.run("MATCH (p:Person {id: 2}) SET p.touched = true").consume();
+
+				try {
+					tx.run("CALL dirty.ranked.set.parallel(1, [2], 2)").consume();
+					fail("ranked.set.parallel committed on its own after a write");
+				} catch (ClientException e) {
+					assertTrue(e.getMessage().contains("commit them first"));
+				}
+			}
+
+			assertEquals(0, session.run("MATCH (:Person {id: 1})-[r:RANKED]->() RETURN r").list().size());
+		}
+	}
+
+	@Test
+	public void testSkippedRankedSetKeepsTheConnectionPosition() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String s = "s";
+			String a = "a";
+			String b = "b";
+			String c = "c";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson(s, 1)
+					.addPerson(a, 2)
+					.addPerson(b, 3)
+					.addPerson(c, 4)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(s, a, 0)
+					.connectRanked(s, b, 1)
+					.connectRanked(s, c, 2)
+					.build();
+
+			session.run(create);
+
+			// s -> a, through the first of its ranks
+			session.run("CALL dirty.opinion.set(2, 1, 0)");
+
+			// a moves to the back, but b and c are disjoint, so s stays with a
+			Record summary = session.run("CALL dirty.ranked.set(1, [3, 4, 2])").single();
+			assertEquals(1, summary.get("skipped").asLong());
+			assertTrue(friendIsInfluencer("a", session.run("CALL friend.author(1, 0)").list()));
+
+			// c, now ahead of a, takes s over
+			session.run("CALL dirty.opinion.set(4, 2, 0)");
+
+			assertTrue(friendIsInfluencer("c", session.run("CALL friend.author(1, 0)").list()));
+			assertEquals(2, influence(session, 4));
+			assertEquals(1, influence(session, 2));
+		}
+	}
+
+	@Test
+	public void testRankedSetSkipsUnaffectedTopics() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addTopic(1)
+					.addTopic(2)
+					.addTopic(3)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(a, b, 0)
+					.connectRanked(a, c, 1)
+					.build();
+
+			session.run(create);
+
+			// topic 0: a -> b, topic 1: a manually -> d, topic 2: a disjoint, topic 3: a -> c
+			session.run("CALL dirty.opinion.set(2, 1, 0)");
+			session.run("CALL dirty.target.set(1, 4, 1)");
+			session.run("CALL dirty.opinion.set(3, 2, 3)");
+
+			// c, which a connects through in topic 3, is replaced by the disjoint d
+			Record summary = session.run("CALL dirty.ranked.set(1, [2, 4])").single();
+
+			assertEquals(4, summary.get("topics").asLong());
+			assertEquals(3, summary.get("skipped").asLong());
+			assertEquals(1, summary.get("recomputed").asLong());
+
+			assertTrue(friendIsInfluencer("b", session.run("CALL friend.author(1, 0)").list()));
+
+			// a no longer connects through c
+			assertEquals(1, session.run("CALL measure.influence(3, 3)").single().get("influence").asLong());
+		}
+	}
+
+	@Test
+	public void testRankedEdits() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(a, b, 0)
+					.connectRanked(a, c, 1)
+					.build();
+
+			session.run(create);
+
+			// a -> b
+			session.run("CALL dirty.opinion.set(2, 1, 0)");
+			session.run("CALL dirty.opinion.set(4, 2, 0)");
+
+			// behind b, so nothing to recompute
+			Record summary = session.run("CALL dirty.ranked.insert(1, 4, 2)").single();
+			assertEquals(1, summary.get("skipped").asLong());
+
+			// ahead of b, and connected
+			summary = session.run("CALL dirty.ranked.move(1, 4, 0)").single();
+			assertEquals(1, summary.get("recomputed").asLong());
+			assertTrue(friendIsInfluencer("d", session.run("CALL friend.author(1, 0)").list()));
+
+			summary = session.run("CALL dirty.ranked.remove(1, 4)").single();
+			assertEquals(1, summary.get("recomputed").asLong());
+			assertTrue(friendIsInfluencer("b", session.run("CALL friend.author(1, 0)").list()));
+
+			// 2^32 would be 0 once cast
+			for (String call : Arrays.asList("dirty.ranked.insert(1, 4, 4294967296)", "dirty.ranked.move(1, 2, 4294967296)")) {
+				try {
+					session.run("CALL " + call).consume();
+					fail(call + " ran");
+				} catch (ClientException e) {
+					assertTrue(e.getMessage().contains("out of range"));
+				}
+			}
+
+			assertTrue(friendIsInfluencer("b", session.run("CALL friend.author(1, 0)").list()));
+		}
+	}
+
+	@Test
+	public void testArrayEncodedRanked() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(a, b, 0)
+					.connectRanked(a, c, 1)
+					.connectRanked(a, d, 2)
+					.build();
+
+			session.run(create);
+
+			Record migration = session.run("CALL ranked.encode.array()").single();
+			assertEquals(4, migration.get("people").asLong());
+			assertEquals(4, migration.get("migrated").asLong());
+
+			assertEquals(0, session.run("MATCH ()-[r:RANKED]->() RETURN r").list().size());
+			assertEquals(3, session.run("CALL friend(1)").list().size());
+
+			// a is found upstream of b through the array
+			session.run("CALL dirty.opinion.set(2, 1, 0)");
+			session.run("CALL dirty.opinion.set(4, 2, 0)");
+			assertTrue(friendIsInfluencer("b", session.run("CALL friend.author(1, 0)").list()));
+
+			session.run("CALL dirty.ranked.move(1, 4, 0)");
+			assertTrue(friendIsInfluencer("d", session.run("CALL friend.author(1, 0)").list()));
+
+			// and back again, keeping the order
+			migration = session.run("CALL ranked.encode.relationships()").single();
+			assertEquals(4, migration.get("migrated").asLong());
+
+			List<Record> ranked = session.run("MATCH (:Person {id: 1})-[r:RANKED]->(p) RETURN p.id AS id ORDER BY r.rank").list();
+			assertEquals(4, ranked.get(0).get("id").asLong());
+			assertEquals(2, ranked.get(1).get("id").asLong());
+			assertEquals(3, ranked.get(2).get("id").asLong());
+		}
+	}
+
+	@Test
+	public void testSharedTopicEncoding() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addTopic(1)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(a, b, 0)
+					.connectRanked(a, c, 1)
+					.build();
+
+			session.run(create);
+
+			// a -> b in topic 0, a -> c in topic 1
+			session.run("CALL dirty.opinion.set(2, 1, 0)");
+			session.run("CALL dirty.opinion.set(3, 2, 1)");
+
+			Record migration = session.run("CALL topic.encode(0, 'SHARED')").single();
+			assertEquals(2, migration.get("migrated").asLong());
+
+			assertEquals(0, session.run("MATCH ()-[r:CONNECTED_0]->() RETURN r").list().size());
+			// a -> b -> opinion1
+			assertEquals(2, session.run("MATCH ()-[r:CONNECTED {topic: 0}]->() RETURN r").list().size());
+			assertTrue(friendIsInfluencer("b", session.run("CALL friend.author(1, 0)").list()));
+
+			// topics are walked in their own encoding
+			session.run("CALL dirty.opinion.set(3, 1, 0)");
+			session.run("CALL dirty.target.set(1, 3, 0)");
+			assertTrue(friendIsInfluencer("c", session.run("CALL friend.author(1, 0)").list()));
+			assertTrue(friendIsInfluencer("c", session.run("CALL friend.author(1, 1)").list()));
+
+			session.run("CALL topic.encode(0, 'PER_TYPE')");
+			assertEquals(0, session.run("MATCH ()-[r:CONNECTED]->() RETURN r").list().size());
+			assertTrue(friendIsInfluencer("c", session.run("CALL friend.author(1, 0)").list()));
+		}
+	}
+
+	@Test
+	public void testMaintainedInfluenceMatchesSeed() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o1 = "opinion1";
+
+			String create = TestUtils.createWalkable(0)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o1, 1)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(sr, ng, 0)
+					.connectRanked(ll, ng, 0)
+					.build();
+
+			session.run(create);
+
+			// void
+			session.run("CALL dirty.opinion.set(5, 1, 0)");
+
+			assertEquals(5, influence(session, 5));
+			assertEquals(3, influence(session, 4));
+
+			session.run("CALL dirty.target.set(4, 1, 0)");
+
+			long[] maintained = new long[6];
+			for (int id = 1; id <= 5; id++) {
+				maintained[id] = influence(session, id);
+			}
+
+			// counted in one pass, without the maintained counts
+			List<Record> many = session.run("CALL measure.influence.many(0, [1, 2, 3, 4, 5, 99])").list();
+
+			assertEquals(5, many.size());
+			many.forEach(record -> assertEquals(
+					maintained[(int) record.get("userId").asLong()],
+					record.get("influence").asLong()));
+
+			assertEquals(5, session.run("CALL measure.influence.all(0)").list().size());
+
+			session.run("CALL measure.influence.seed(0)");
+
+			for (int id = 1; id <= 5; id++) {
+				assertEquals(influence(session, id), maintained[id]);
+			}
+		}
+	}
+
+	@Test
+	public void testInfluenceTopFollowsConnections() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o1 = "opinion1";
+			String o2 = "opinion2";
+
+			String create = TestUtils.createWalkable(0)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o1, 1)
+					.addOpinion(o2, 2)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(sr, ng, 0)
+					.connectRanked(ll, ng, 0)
+					.build();
+
+			session.run(create);
+
+			// no index until an author is counted
+			assertTrue(session.run("CALL measure.influence.top(0, 5)").list().isEmpty());
+
+			// void
+			session.run("CALL dirty.opinion.set(5, 2, 0)");
+			session.run("CALL dirty.opinion.set(1, 1, 0)");
+
+			List<Record> top = session.run("CALL measure.influence.top(0, 5)").list();
+
+			assertEquals(2, top.size());
+			assertEquals(5, top.get(0).get("userId").asLong());
+			assertEquals(4, top.get(0).get("influence").asLong());
+			assertEquals(1, top.get(1).get("userId").asLong());
+			assertEquals(1, top.get(1).get("influence").asLong());
+
+			// sr takes mb over to klb
+			session.run("CALL dirty.target.set(4, 1, 0)");
+
+			top = session.run("CALL measure.influence.top(0, 1)").list();
+
+			assertEquals(1, top.size());
+			assertEquals(1, top.get(0).get("userId").asLong());
+			assertEquals(3, top.get(0).get("influence").asLong());
+
+			// without an opinion, ll leaves the index
+			session.run("CALL dirty.opinion.clear(5, 0)");
+
+			top = session.run("CALL measure.influence.top(0, 5)").list();
+
+			assertEquals(1, top.size());
+			assertEquals(1, top.get(0).get("userId").asLong());
+		}
+	}
+
+	@Test
+	public void testTopicRebuild() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(0)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o, 0)
+					.connectAuthored(klb, o)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(klb, ll, 1)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(mb, ll, 2)
+					.connectRanked(mb, klb, 3)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(ng, sr, 1)
+					.connectRanked(sr, ng, 0)
+					.connectRanked(sr, klb, 1)
+					.connectRanked(sr, ll, 2)
+					.connectRanked(ll, ng, 0)
+					.build();
+
+			// imported with an opinion, but no connections
+			session.run(create);
+
+			Record rebuilt = session.run("CALL dirty.topic.rebuild(0)").single();
+
+			assertEquals(5, rebuilt.get("people").asLong());
+			assertEquals(3, rebuilt.get("connected").asLong());
+			assertEquals(2, rebuilt.get("disjoint").asLong());
+
+			List<Record> results = session.run("CALL friend.author(2, 0)").list();
+			assertTrue(containsFriendAuthorNameCombo("sr", "klb", results));
+			assertTrue(friendIsInfluencer("sr", results));
+			assertEquals(3, influence(session, 1));
+
+			// drifted state is thrown away
+			session.run("MATCH (p:Person) SET p.state_0 = 2, p.influence_0 = 42 REMOVE p.author_0");
+			session.run("MATCH ()-[r:CONNECTED_0]->() DELETE r");
+
+			rebuilt = session.run("CALL dirty.topic.rebuild(0)").single();
+
+			assertEquals(3, rebuilt.get("connected").asLong());
+			assertEquals(2, rebuilt.get("disjoint").asLong());
+			assertTrue(friendIsInfluencer("sr", session.run("CALL friend.author(2, 0)").list()));
+
+			for (int id = 1; id <= 5; id++) {
+				assertEquals(
+						session.run("CALL measure.influence.many(0, [" + id + "])").single().get("influence").asLong(),
+						influence(session, id));
+			}
+		}
+	}
+
+	@Test
+	public void testTopicRebuildSwap() throws InterruptedException {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o, 0)
+					.connectAuthored(klb, o)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(ng, sr, 1)
+					.connectRanked(sr, klb, 0)
+					.build();
+
+			session.run(create);
+			session.run("CALL dirty.topic.rebuild(0)");
+
+			// drifted, until the swap
+			session.run("MATCH (p:Person {id: 4}) SET p.influence_0 = 42");
+
+			Record swapped = session.run("CALL dirty.topic.rebuild.swap(0)").single();
+
+			assertEquals(1, swapped.get("generation").asLong());
+			assertEquals(0, swapped.get("retired").asLong());
+			assertEquals(5, swapped.get("people").asLong());
+			assertEquals(4, swapped.get("connected").asLong());
+			assertEquals(1, swapped.get("disjoint").asLong());
+
+			// reads follow the live generation straight away
+			List<Record> results = session.run("CALL friend.author(2, 0)").list();
+			assertTrue(containsFriendAuthorNameCombo("sr", "klb", results));
+			assertTrue(friendIsInfluencer("sr", results));
+			assertEquals(3, influence(session, 4));
+			assertEquals(4, influence(session, 1));
+			assertEquals(4, session.run("MATCH ()-[r:CONNECTED_0_1]->() RETURN r").list().size());
+
+			awaitCount(session, "MATCH ()-[r:CONNECTED_0]->() RETURN count(r) AS n", 0);
+			awaitCount(session, "MATCH (p:Person) WHERE exists(p.state_0) OR exists(p.influence_0) RETURN count(p) AS n", 0);
+
+			// changes after the swap land in the live generation
+			session.run("CALL dirty.target.set(5, 2, 0)");
+			assertEquals(5, influence(session, 1));
+
+			swapped = session.run("CALL dirty.topic.rebuild.swap(0)").single();
+
+			assertEquals(2, swapped.get("generation").asLong());
+			assertEquals(1, swapped.get("retired").asLong());
+			assertEquals(5, swapped.get("connected").asLong());
+			assertEquals(5, influence(session, 1));
+
+			awaitCount(session, "MATCH ()-[r:CONNECTED_0_1]->() RETURN count(r) AS n", 0);
+		}
+	}
+
+	@Test
+	public void testTopicRebuildSwapWaitsForChanges() throws Exception {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session();
+				Session changing = driver.session()
+		) {
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson("klb", 1)
+					.addPerson("mb", 2)
+					.addPerson("sr", 4)
+					.addPerson("ll", 5)
+					.addOpinion("opinion", 0)
+					.connectAuthored("klb", "opinion")
+					.connectRanked("mb", "sr", 0)
+					.connectRanked("sr", "klb", 0)
+					.build();
+
+			// consumed, so the other sessions see it
+			session.run(create).consume();
+			session.run("CALL dirty.topic.rebuild(0)").consume();
+
+			ExecutorService swapper = Executors.newSingleThreadExecutor();
+
+			try (Transaction tx = changing.beginTransaction()) {
+				tx.run("CALL dirty.target.set(5, 2, 0)").consume();
+
+				Future<Record> swap = swapper.submit(() -> {
+					try (Session swapping = driver.session()) {
+						return swapping.run("CALL dirty.topic.rebuild.swap(0)").single();
+					}
+				});
+
+				// the build waits for the change to finish
+				Thread.sleep(500);
+				assertFalse(swap.isDone());
+
+				tx.success();
+				tx.close();
+
+				Record swapped = swap.get(10, TimeUnit.SECONDS);
+
+				// and is built with it
+				assertEquals(4, swapped.get("connected").asLong());
+				assertEquals(4, influence(session, 1));
+			} finally {
+				swapper.shutdown();
+			}
+		}
+	}
+
+	// old generations are collected in the background
+	private static void awaitCount(Session session, String count, long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+
+		while (session.run(count).single().get("n").asLong() != expected) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("timed out waiting on: " + count);
+			}
+
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testTopicMaintenance() {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addTopic(1)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion("opinion1", 1)
+					.addOpinion("opinion2", 2)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(sr, ng, 0)
+					.build();
+
+			session.run(create);
+
+			session.run("CALL dirty.opinion.set(1, 1, 0)");
+			session.run("CALL dirty.opinion.set(5, 2, 1)");
+
+			assertTrue(session.run("CALL topics.maintain.status()").list().isEmpty());
+
+			// topic 1 loses its connections, but keeps its states
+			session.run("MATCH ()-[r:CONNECTED_1]->() DELETE r");
+
+			Record verified = session.run("CALL topics.maintain('VERIFY', 2)").single();
+
+			assertEquals(1, verified.get("run").asLong());
+			assertEquals(2, verified.get("topics").asLong());
+			assertEquals(2, verified.get("done").asLong());
+			assertEquals(0, verified.get("failed").asLong());
+			assertTrue(verified.get("finished").asBoolean());
+			assertTrue(verified.get("drifted").asLong() > 0);
+
+			// verifying writes nothing
+			assertEquals(0, session.run("MATCH ()-[r:CONNECTED_1]->() RETURN r").list().size());
+
+			Record rebuilt = session.run("CALL topics.maintain('REBUILD', 2)").single();
+
+			assertEquals(2, rebuilt.get("run").asLong());
+			assertEquals(2, rebuilt.get("done").asLong());
+			assertEquals(0, rebuilt.get("drifted").asLong());
+			assertTrue(friendIsInfluencer("sr", session.run("CALL friend.author(2, 1)").list()));
+
+			// an interrupted run is resumed, skipping the topics it finished
+			session.run("MATCH (m:Maintenance) SET m.finished = false");
+			session.run("MATCH (t:Topic {id: 1}) REMOVE t.maintainedRun");
+
+			assertEquals(1, session.run("CALL topics.maintain.status()").single().get("done").asLong());
+
+			Record resumed = session.run("CALL topics.maintain('REBUILD', 1)").single();
+
+			assertEquals(2, resumed.get("run").asLong());
+			assertEquals(2, resumed.get("done").asLong());
+			assertTrue(resumed.get("finished").asBoolean());
+
+			Record status = session.run("CALL topics.maintain.status()").single();
+			assertEquals("REBUILD", status.get("mode").asString());
+			assertEquals(2, status.get("done").asLong());
+		}
+	}
+
+	@Test
+	public void testMaintenanceRunsShareOneJob() throws Exception {
+		try (
+				Driver driver = GraphDatabase.driver(neo4j.boltURI(), Config.build().withEncryptionLevel(Config.EncryptionLevel.NONE).toConfig());
+				Session session = driver.session()
+		) {
+			String create = TestUtils.createWalkable(0)
+					.addTopic(0)
+					.addPerson("klb", 1)
+					.addPerson("mb", 2)
+					.addOpinion("opinion", 0)
+					.connectAuthored("klb", "opinion")
+					.connectRanked("mb", "klb", 0)
+					.build();
+
+			session.run(create).consume();
+
+			ExecutorService runners = Executors.newFixedThreadPool(4);
+
+			try {
+				List<Future<Record>> runs = new ArrayList<>();
+
+				for (int i = 0; i < 4; i++) {
+					runs.add(runners.submit(() -> {
+						try (Session running = driver.session()) {
+							return running.run("CALL topics.maintain('VERIFY', 1)").single();
+						}
+					}));
+				}
+
+				for (Future<Record> run : runs) {
+					assertEquals(0, run.get(30, TimeUnit.SECONDS).get("failed").asLong());
+				}
+			} finally {
+				runners.shutdown();
+			}
+
+			assertEquals(1, session.run("MATCH (m:Maintenance) RETURN count(m) AS n").single().get("n").asLong());
+
+			for (String threads : Arrays.asList("0", "-1", "4294967297")) {
+				try {
+					session.run("CALL topics.maintain('VERIFY', " + threads + ")").consume();
+					fail("ran with " + threads + " threads");
+				} catch (ClientException e) {
+					assertTrue(e.getMessage().contains("threads must be between"));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSeedEndsItsCascadeWhenSeedingFails() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		String create = TestUtils.createWalkable(0)
+				.addPerson("klb", 1)
+				.addPerson("mb", 2)
+				.addPerson("ng", 3)
+				.build();
+
+		gdb.execute(create);
+
+		try (org.neo4j.graphdb.Transaction tx = gdb.beginTx()) {
+			List<Node> people = gdb.findNodes(Nodes.Labels.PERSON).stream()
+					.collect(toList());
+
+			int[] cascades = {0};
+			int[] seeded = {0};
+
+			Navigator failing = new Navigator(0) {
+				@Override
+				public void beginCascade() {
+					cascades[0]++;
+					super.beginCascade();
+				}
+
+				@Override
+				public void endCascade() {
+					cascades[0]--;
+					super.endCascade();
+				}
+
+				@Override
+				public void seed(Node n, long influence) {
+					if (++seeded[0] == 2) {
+						throw new IllegalStateException("seeding failed");
+					}
+
+					super.seed(n, influence);
+				}
+			};
+
+			try {
+				Traverse.seed(failing, people);
+				fail("seeding didn't fail");
+			} catch (IllegalStateException e) {
+				assertEquals("seeding failed", e.getMessage());
+			}
+
+			assertEquals(2, seeded[0]);
+			assertEquals(0, cascades[0]);
+
+			// no longer cascading, so invalidate has nothing to last for
+			try {
+				failing.invalidate();
+				fail("still cascading");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("begin one first"));
+			}
+		}
+	}
+
+	private static long influence(Session session, long userId) {
+		return session.run("CALL measure.influence(" + userId + ", 0)")
+				.single()
+				.get("influence")
+				.asLong();
+	}
 }
 
 
@@ -2,18 +2,28 @@ package outlikealambda.traversal;
 
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.walk.Navigator;
 import outlikealambda.utils.Composables;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ConnectivityManagerTest {
 	@ClassRule
@@ -66,6 +76,221 @@ public class ConnectivityManagerTest {
 			assertEquals(bNode, rankedOrder.get(2));
 
 
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void testSetRankedOnlyWritesChanges() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("h", 8)
+					.addPerson("i", 9)
+					.addPerson("j", 10)
+					.addPerson("k", 11)
+					.addPerson("l", 12)
+					.build());
+
+			Node hNode = getPerson.apply(8);
+			Node iNode = getPerson.apply(9);
+			Node jNode = getPerson.apply(10);
+			Node kNode = getPerson.apply(11);
+			Node lNode = getPerson.apply(12);
+
+			ConnectivityManager.setRanked(hNode, Arrays.asList(iNode, jNode, kNode));
+
+			Function<Node, Long> relationshipTo = target -> Relationships.getRankedOutgoing(hNode)
+					.filter(r -> r.getEndNode().equals(target))
+					.map(Relationship::getId)
+					.findFirst()
+					.get();
+
+			long toI = relationshipTo.apply(iNode);
+			long toK = relationshipTo.apply(kNode);
+
+			// i and k swap, j leaves, l arrives
+			RankedChange change = ConnectivityManager.setRanked(hNode, Arrays.asList(kNode, lNode, iNode));
+
+			assertEquals(Arrays.asList(iNode, jNode, kNode), change.getPrevious());
+			assertEquals(Arrays.asList(kNode, lNode, iNode), change.getCurrent());
+			assertEquals(Collections.singletonList(lNode), change.getAdded());
+			assertEquals(Collections.singletonList(jNode), change.getRemoved());
+			assertEquals(Arrays.asList(kNode, iNode), change.getMoved());
+
+			// kept targets keep their relationships
+			assertEquals(toI, (long) relationshipTo.apply(iNode));
+			assertEquals(toK, (long) relationshipTo.apply(kNode));
+
+			assertEquals(
+					Arrays.asList(kNode, lNode, iNode),
+					Relationships.getRankedByRank(hNode).map(Relationship::getEndNode).collect(toList()));
+
+			assertTrue(ConnectivityManager.setRanked(hNode, Arrays.asList(kNode, lNode, iNode)).isEmpty());
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void testArrayEncodedSetRanked() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("m", 13)
+					.addPerson("n", 14)
+					.addPerson("o", 15)
+					.addPerson("p", 16)
+					.build());
+
+			Node mNode = getPerson.apply(13);
+			Node nNode = getPerson.apply(14);
+			Node oNode = getPerson.apply(15);
+			Node pNode = getPerson.apply(16);
+
+			ConnectivityManager.setRanked(mNode, Arrays.asList(nNode, oNode));
+			Relationships.toArrayEncoding(mNode);
+
+			assertTrue(Relationships.isArrayEncoded(mNode));
+			assertEquals(0, Relationships.getRankedOutgoing(mNode).count());
+			assertEquals(Arrays.asList(nNode, oNode), Relationships.getRankedTargets(mNode).collect(toList()));
+
+			RankedChange change = ConnectivityManager.setRanked(mNode, Arrays.asList(pNode, nNode));
+
+			assertEquals(Collections.singletonList(pNode), change.getAdded());
+			assertEquals(Collections.singletonList(oNode), change.getRemoved());
+			assertEquals(Collections.singletonList(nNode), change.getMoved());
+			assertEquals(Arrays.asList(pNode, nNode), Relationships.getRankedTargets(mNode).collect(toList()));
+
+			// the reverse lookup follows
+			assertEquals(Collections.singletonList(mNode), Relationships.getArrayRankedSources(pNode).collect(toList()));
+			assertEquals(0, Relationships.getArrayRankedSources(oNode).count());
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void testArrayRankedSourcesOfAHub() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			// ids from 1000, clear of the other tests
+			gdb.execute("UNWIND range(1000, 2200) AS id CREATE (:Person {id: id})");
+
+			Node hub = getPerson.apply(1000);
+			List<Node> sources = IntStream.rangeClosed(1001, 2200)
+					.mapToObj(getPerson::apply)
+					.collect(toList());
+
+			sources.forEach(source -> {
+				source.setProperty(Nodes.Fields.RANKED, new long[0]);
+				ConnectivityManager.setRanked(source, Collections.singletonList(hub));
+			});
+
+			// spread over three segments
+			assertTrue(hub.hasProperty("rankedBy.2"));
+			assertEquals(new HashSet<>(sources), Relationships.getArrayRankedSources(hub).collect(toSet()));
+
+			List<Node> unranked = sources.subList(0, 700);
+			unranked.forEach(source -> ConnectivityManager.setRanked(source, Collections.emptyList()));
+
+			List<Node> remaining = new ArrayList<>(sources.subList(700, sources.size()));
+			assertFalse(hub.hasProperty("rankedBy.1"));
+			assertEquals(new HashSet<>(remaining), Relationships.getArrayRankedSources(hub).collect(toSet()));
+
+			// deleted without being unranked first
+			Node deleted = remaining.remove(0);
+			deleted.delete();
+
+			assertEquals(new HashSet<>(remaining), Relationships.getArrayRankedSources(hub).collect(toSet()));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void testWalkSkipsDeletedRankedTarget() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("s", 20)
+					.addPerson("x", 21)
+					.addPerson("a", 22)
+					.addOpinion("o", 23)
+					.build());
+
+			Node sNode = getPerson.apply(20);
+			Node xNode = getPerson.apply(21);
+			Node aNode = getPerson.apply(22);
+			Node opinion = gdb.findNode(Nodes.Labels.OPINION, Nodes.Fields.ID, 23);
+
+			sNode.setProperty(Nodes.Fields.RANKED, new long[0]);
+			ConnectivityManager.setRanked(sNode, Arrays.asList(xNode, aNode));
+			ConnectivityManager.dirtyWalker(0).setOpinion(aNode, opinion);
+
+			// deleted without being unranked first
+			xNode.delete();
+
+			assertEquals(Collections.singletonList(aNode), Relationships.getRankedTargets(sNode).collect(toList()));
+
+			Navigator nav = new Navigator(0);
+			Function<Node, Node> connectedTo = n -> n
+					.getSingleRelationship(Relationships.Types.connected(0), Direction.OUTGOING)
+					.getEndNode();
+
+			ConnectivityManager.dirtyWalker(0).updateConnectivity(sNode);
+
+			assertEquals(aNode, connectedTo.apply(sNode));
+			// still its position in the stored list
+			assertEquals(1, nav.getConnectedIndex(sNode));
+
+			ConnectivityManager.rebuild(gdb, 0);
+
+			assertEquals(aNode, connectedTo.apply(sNode));
+			// the snapshot leaves x out, so has no position to record
+			assertEquals(-1, nav.getConnectedIndex(sNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void testRankedTargetsFollowCommittedSetRanked() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("e", 5)
+					.addPerson("f", 6)
+					.addPerson("g", 7)
+					.build());
+
+			ConnectivityManager.setRanked(getPerson.apply(5), Arrays.asList(getPerson.apply(6), getPerson.apply(7)));
+
+			tx.success();
+		}
+
+		Function<Integer, List<Node>> rankedTargets = id -> Relationships.getRankedTargets(getPerson.apply(id))
+				.collect(toList());
+
+		try (Transaction tx = gdb.beginTx()) {
+			assertEquals(Arrays.asList(getPerson.apply(6), getPerson.apply(7)), rankedTargets.apply(5));
+
+			// rewritten, and read back from inside the same transaction
+			ConnectivityManager.setRanked(getPerson.apply(5), Arrays.asList(getPerson.apply(7), getPerson.apply(6)));
+			assertEquals(Arrays.asList(getPerson.apply(7), getPerson.apply(6)), rankedTargets.apply(5));
+
+			tx.failure();
+		}
+
+		// the rolled back list was cached, but isn't seen
+		try (Transaction tx = gdb.beginTx()) {
+			assertEquals(Arrays.asList(getPerson.apply(6), getPerson.apply(7)), rankedTargets.apply(5));
+
 			tx.failure();
 		}
 	}
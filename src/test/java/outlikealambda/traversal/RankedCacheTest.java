@@ -0,0 +1,146 @@
+package outlikealambda.traversal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.junit.Neo4jRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RankedCacheTest {
+	@Rule
+	public Neo4jRule neo4j = new Neo4jRule();
+
+	private final Function<Integer, Node> getPerson = TestUtils.getPerson(neo4j);
+
+	private long[] setUp() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("a", 1)
+					.addPerson("b", 2)
+					.addPerson("c", 3)
+					.build());
+
+			Relationships.setRanked(getPerson.apply(1), Arrays.asList(getPerson.apply(2), getPerson.apply(3)));
+
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			long[] ids = {getPerson.apply(2).getId(), getPerson.apply(3).getId()};
+
+			// cached
+			assertArrayEquals(ids, RankedCache.get(getPerson.apply(1)));
+
+			tx.success();
+
+			return ids;
+		}
+	}
+
+	@Test
+	public void reRankingOutsideSetRankedIsSeen() {
+		long[] ids = setUp();
+
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute("MATCH (:Person {id: 1})-[r:RANKED]->(p) SET r.rank = 3 - p.id");
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			assertArrayEquals(new long[]{ids[1], ids[0]}, RankedCache.get(getPerson.apply(1)));
+			tx.success();
+		}
+	}
+
+	@Test
+	public void deletedTargetsAreDropped() {
+		long[] ids = setUp();
+
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute("MATCH (p:Person {id: 2}) DETACH DELETE p");
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			assertArrayEquals(new long[]{ids[1]}, RankedCache.get(getPerson.apply(1)));
+			tx.success();
+		}
+	}
+
+	@Test
+	public void deletedTargetsAreDroppedInTheDeletingTransaction() {
+		long[] ids = setUp();
+
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute("MATCH (p:Person {id: 2}) DETACH DELETE p");
+
+			// the cached list is kept until the commit, but the deleted target is skipped
+			assertArrayEquals(ids, RankedCache.get(getPerson.apply(1)));
+			assertEquals(
+					Collections.singletonList(getPerson.apply(3)),
+					Relationships.getRankedTargets(getPerson.apply(1)).collect(toList()));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void listsNeverSetRankedAreCached() {
+		GraphDatabaseService gdb = neo4j.getGraphDatabaseService();
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute(TestUtils.createWalkable(0)
+					.addPerson("a", 1)
+					.addPerson("b", 2)
+					.addPerson("c", 3)
+					.connectRanked("a", "b", 1)
+					.connectRanked("a", "c", 2)
+					.build());
+
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			long[] cached = RankedCache.get(getPerson.apply(1));
+
+			assertArrayEquals(new long[]{getPerson.apply(2).getId(), getPerson.apply(3).getId()}, cached);
+			assertSame(cached, RankedCache.get(getPerson.apply(1)));
+
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			gdb.execute("MATCH (:Person {id: 1})-[r:RANKED]->(p) SET r.rank = 4 - p.id");
+			tx.success();
+		}
+
+		try (Transaction tx = gdb.beginTx()) {
+			// stamped by the commit
+			assertTrue(getPerson.apply(1).hasProperty(RankedCache.VERSION));
+			assertArrayEquals(
+					new long[]{getPerson.apply(3).getId(), getPerson.apply(2).getId()},
+					RankedCache.get(getPerson.apply(1)));
+
+			tx.success();
+		}
+	}
+}
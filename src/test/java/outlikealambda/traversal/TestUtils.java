@@ -75,6 +75,11 @@ public class TestUtils {
 			return this;
 		}
 
+		public Walkable addTopic(int id) {
+			creates.add(String.format("(t"+id+":Topic {id:%d})", id));
+			return this;
+		}
+
 		public Walkable addOpinion(String opinion, int id) {
 			creates.add(String.format("(%s:Opinion {id:%d})", opinion, id));
 			return this;
@@ -8,11 +8,22 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.walk.DirtyBlazer;
 import outlikealambda.traversal.walk.Navigator;
+import outlikealambda.utils.LongQueue;
+import outlikealambda.utils.LongSet;
+import outlikealambda.utils.Traversals;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -32,6 +43,7 @@ public class TraversalComparer {
 	private static int topicId = 64;
 
 	private static Navigator nav = new Navigator(topicId);
+	private static InfluenceIndex influenceIndex = new InfluenceIndex(topicId);
 
 	private static ConnectivityManager basic = ConnectivityManager.unwindAndWalk(topicId);
 	private static ConnectivityManager smart = ConnectivityManager.dirtyWalker(topicId);
@@ -96,6 +108,13 @@ public class TraversalComparer {
 				clearAuthored();
 				clearConnected();
 				insertAndCompareConnectionMap(baseConnectionMap, authorOpinions, smart);
+
+				clearAuthored();
+				clearConnected();
+				insertAndCompareConnectionMap(
+						baseConnectionMap,
+						authorOpinions,
+						ConnectivityManager.compactWalker(neo4j.getGraphDatabaseService(), topicId));
 			}
 
 			tx.failure();
@@ -213,6 +232,396 @@ public class TraversalComparer {
 		}
 	}
 
+	@Test
+	public void compareRankedEncodingRuntime() {
+		int size = 600;
+		int readCount = 200;
+
+		boolean[][] matrix = RelationshipMatrix.build(size);
+
+		TestUtils.Walkable builder = new TestUtils.Walkable(0);
+
+		IntStream.range(0, size)
+				.forEach(builder::addPersonIdOnly);
+
+		RelationshipMatrix.toDirectedTriples(matrix)
+				.forEach(triple -> builder.connectRankedById(triple.getLeft(), triple.getRight(), triple.getMiddle()));
+
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+
+			neo4j.getGraphDatabaseService().execute(builder.build());
+
+			List<Node> people = IntStream.range(0, size)
+					.mapToObj(getPerson::apply)
+					.collect(toList());
+
+			Map<Node, List<Node>> relationshipRanked = people.stream()
+					.collect(toMap(Function.identity(), p -> Relationships.getRankedTargets(p).collect(toList())));
+
+			long start = System.currentTimeMillis();
+
+			for (int passes = 0; passes < readCount; passes++) {
+				people.forEach(p -> Relationships.getRankedTargets(p).count());
+			}
+
+			System.out.println("RELATIONSHIPS:" + (System.currentTimeMillis() - start) + "ms");
+
+			people.forEach(Relationships::toArrayEncoding);
+
+			start = System.currentTimeMillis();
+
+			for (int passes = 0; passes < readCount; passes++) {
+				people.forEach(p -> Relationships.getRankedTargets(p).count());
+			}
+
+			System.out.println("ARRAY:" + (System.currentTimeMillis() - start) + "ms");
+
+			people.forEach(p -> assertEquals(
+					relationshipRanked.get(p),
+					Relationships.getRankedTargets(p).collect(toList())));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void compareTopicEncodingRuntime() {
+		int size = 300;
+		int topicCount = 200;
+		int opinionCount = 5;
+
+		boolean[][] matrix = RelationshipMatrix.build(size);
+
+		TestUtils.Walkable builder = new TestUtils.Walkable(0);
+
+		IntStream.range(0, size)
+				.forEach(builder::addPersonIdOnly);
+
+		IntStream.range(0, opinionCount)
+				.forEach(builder::addOpinionIdOnly);
+
+		IntStream.range(0, topicCount)
+				.forEach(builder::addTopic);
+
+		RelationshipMatrix.toDirectedTriples(matrix)
+				.forEach(triple -> builder.connectRankedById(triple.getLeft(), triple.getRight(), triple.getMiddle()));
+
+		String createStatement = builder.build();
+
+		List<Integer> personIds = IntStream.range(0, size).boxed().collect(toList());
+
+		for (TopicEncoding encoding : TopicEncoding.values()) {
+			try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+
+				neo4j.getGraphDatabaseService().execute(createStatement);
+				neo4j.getGraphDatabaseService().findNodes(Nodes.Labels.TOPIC)
+						.forEachRemaining(topic -> topic.setProperty(TopicEncoding.KEY, encoding.name()));
+
+				long start = System.currentTimeMillis();
+
+				for (int topic = 0; topic < topicCount; topic++) {
+					Collections.shuffle(personIds);
+
+					ConnectivityManager manager = ConnectivityManager.dirtyWalker(topic);
+
+					for (int opinion = 0; opinion < opinionCount; opinion++) {
+						manager.setOpinion(getPerson.apply(personIds.get(opinion)), getOpinion(opinion));
+					}
+				}
+
+				System.out.println(encoding + ":" + (System.currentTimeMillis() - start) + "ms");
+
+				tx.failure();
+			}
+		}
+	}
+
+	@Test
+	public void compareKernelRuntime() {
+		int size = 600;
+		int opinionCount = 25;
+		int shuffleCount = 200;
+
+		boolean[][] matrix = RelationshipMatrix.build(size);
+
+		TestUtils.Walkable builder = new TestUtils.Walkable(0);
+
+		IntStream.range(0, size)
+				.forEach(builder::addPersonIdOnly);
+
+		IntStream.range(0, opinionCount)
+				.forEach(builder::addOpinionIdOnly);
+
+		RelationshipMatrix.toDirectedTriples(matrix)
+				.forEach(triple -> builder.connectRankedById(triple.getLeft(), triple.getRight(), triple.getMiddle()));
+
+		String createStatement = builder.build();
+
+		List<Integer> personIds = IntStream.range(0, size).boxed().collect(toList());
+		Collections.shuffle(personIds);
+
+		// by builder id, since the store ids may differ between the runs
+		Map<String, String> baseConnections = null;
+
+		for (String mode : new String[]{ "CORE", "KERNEL" }) {
+			try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+
+				neo4j.getGraphDatabaseService().execute(createStatement);
+
+				ConnectivityManager manager = mode.equals("CORE")
+						? smart
+						: ConnectivityManager.kernelWalker(neo4j.getGraphDatabaseService(), topicId);
+
+				List<Pair<Node, Node>> authorOpinions = IntStream.range(0, opinionCount)
+						.mapToObj(i -> Pair.of(getPerson.apply(personIds.get(i)), getOpinion(i)))
+						.collect(toList());
+
+				authorOpinions.forEach(ao -> manager.setOpinion(ao.getLeft(), ao.getRight()));
+
+				Map<Node, Node> baseConnectionMap = getConnectionMap();
+				Map<String, String> connections = baseConnectionMap.entrySet().stream()
+						.collect(toMap(entry -> describe(entry.getKey()), entry -> describe(entry.getValue())));
+
+				if (baseConnections == null) {
+					baseConnections = connections;
+				} else {
+					assertEquals(baseConnections, connections);
+				}
+
+				long start = System.currentTimeMillis();
+
+				for (int passes = 0; passes < shuffleCount; passes++) {
+					clearAuthored();
+					clearConnected();
+
+					Collections.shuffle(authorOpinions);
+
+					insertAndCompareConnectionMap(baseConnectionMap, authorOpinions, manager);
+				}
+
+				System.out.println(mode + ":" + (System.currentTimeMillis() - start) + "ms");
+
+				tx.failure();
+			}
+		}
+	}
+
+	/**
+	 * Dirty cascades which queue every upstream node of a flipped one, against
+	 * cascades which only queue those whose walk depends on it (see
+	 * Navigator.dependsOn): the connections must match after every change.
+	 *
+	 * Walks through a cycle keep the first connection they find, so where
+	 * pruning changes the order nodes are walked in, the two could settle on
+	 * different connections which are equally valid.  The graph is kept
+	 * acyclic, every ranked and manual target having a higher id than its
+	 * source, so there's only one.
+	 */
+	@Test
+	public void comparePrunedCascade() {
+		int size = 600;
+		int opinionCount = 25;
+		int changeCount = 1000;
+
+		boolean[][] matrix = RelationshipMatrix.build(size);
+
+		TestUtils.Walkable builder = new TestUtils.Walkable(0);
+
+		IntStream.range(0, size)
+				.forEach(builder::addPersonIdOnly);
+
+		IntStream.range(0, opinionCount)
+				.forEach(builder::addOpinionIdOnly);
+
+		RelationshipMatrix.toDirectedTriples(matrix).stream()
+				.filter(triple -> triple.getLeft() < triple.getRight())
+				.forEach(triple -> builder.connectRankedById(triple.getLeft(), triple.getRight(), triple.getMiddle()));
+
+		String createStatement = builder.build();
+
+		List<Integer> personIds = IntStream.range(0, size).boxed().collect(toList());
+		Collections.shuffle(personIds);
+
+		// {kind, person, target or opinion}, the same for both runs; targets
+		// have the higher id
+		Random random = new Random();
+		List<int[]> changes = IntStream.range(0, changeCount)
+				.mapToObj(i -> {
+					int person = random.nextInt(size - 1);
+
+					return new int[]{ random.nextInt(5), person, person + 1 + random.nextInt(size - person - 1) };
+				})
+				.collect(toList());
+
+		// by builder id, after each change
+		List<Map<String, String>> baseConnections = new ArrayList<>();
+
+		for (String mode : new String[]{ "UNPRUNED", "PRUNED" }) {
+			try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+
+				neo4j.getGraphDatabaseService().execute(createStatement);
+
+				long[] skipped = { 0 };
+
+				Navigator navigator = mode.equals("UNPRUNED")
+						? new Navigator(topicId) {
+							@Override
+							public boolean dependsOn(Node source, Node target) {
+								return true;
+							}
+						}
+						: new Navigator(topicId) {
+							@Override
+							public boolean dependsOn(Node source, Node target) {
+								boolean depends = super.dependsOn(source, target);
+
+								if (!depends) {
+									skipped[0]++;
+								}
+
+								return depends;
+							}
+						};
+
+				DirtyBlazer blazer = new DirtyBlazer(navigator);
+				ConnectivityManager manager = ConnectivityManager.create(navigator, blazer::go);
+
+				long start = System.currentTimeMillis();
+
+				for (int opinion = 0; opinion < opinionCount; opinion++) {
+					manager.setOpinion(getPerson.apply(personIds.get(opinion)), getOpinion(opinion));
+				}
+
+				for (int i = 0; i < changes.size(); i++) {
+					int[] change = changes.get(i);
+					Node person = getPerson.apply(change[1]);
+
+					switch (change[0]) {
+						case 0:
+							manager.setTarget(person, getPerson.apply(change[2]));
+							break;
+						case 1:
+							manager.clearTarget(person);
+							break;
+						case 2:
+							manager.setOpinion(person, getOpinion(change[2] % opinionCount));
+							break;
+						case 3:
+							manager.clearOpinion(person);
+							break;
+						default:
+							// reversed, so the connection's position moves; walked again
+							// only where the procedures would, which rewrites the position
+							// where it isn't, so later changes are pruned by where it is now
+							List<Node> reversed = Relationships.getRankedTargets(person).collect(toList());
+							Collections.reverse(reversed);
+
+							RankedChange reordered = ConnectivityManager.setRanked(person, reversed);
+
+							if (!ConnectivityManager.affectedTopics(reordered, Collections.singletonList((long) topicId)).isEmpty()) {
+								manager.updateConnectivity(person);
+							}
+					}
+
+					Map<String, String> connections = getConnectionMap().entrySet().stream()
+							.collect(toMap(entry -> describe(entry.getKey()), entry -> describe(entry.getValue())));
+
+					if (baseConnections.size() == i) {
+						baseConnections.add(connections);
+					} else {
+						assertEquals(baseConnections.get(i), connections);
+					}
+				}
+
+				System.out.println(mode + ":" + (System.currentTimeMillis() - start) + "ms, skipped " + skipped[0]);
+
+				tx.failure();
+			}
+		}
+	}
+
+	/**
+	 * Bytes allocated per dirty cascade, and by the cascade bookkeeping alone:
+	 * boxed sets and linked queues against the primitive structures
+	 */
+	@Test
+	public void compareCascadeAllocation() {
+		int size = 600;
+		int opinionCount = 25;
+		int passes = 200;
+
+		boolean[][] matrix = RelationshipMatrix.build(size);
+
+		TestUtils.Walkable builder = new TestUtils.Walkable(0);
+
+		IntStream.range(0, size)
+				.forEach(builder::addPersonIdOnly);
+
+		IntStream.range(0, opinionCount)
+				.forEach(builder::addOpinionIdOnly);
+
+		RelationshipMatrix.toDirectedTriples(matrix)
+				.forEach(triple -> builder.connectRankedById(triple.getLeft(), triple.getRight(), triple.getMiddle()));
+
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+
+			neo4j.getGraphDatabaseService().execute(builder.build());
+
+			List<Node> people = IntStream.range(0, size)
+					.mapToObj(getPerson::apply)
+					.collect(toList());
+
+			List<Long> ids = people.stream()
+					.map(Node::getId)
+					.collect(toList());
+
+			long before = allocatedBytes();
+
+			for (int pass = 0; pass < passes; pass++) {
+				Set<Long> processed = new HashSet<>();
+				LinkedList<Node> queue = new LinkedList<>();
+
+				people.forEach(queue::add);
+
+				while (!queue.isEmpty()) {
+					processed.add(queue.poll().getId());
+				}
+			}
+
+			System.out.println("BOXED BOOKKEEPING:" + (allocatedBytes() - before) / passes + "B/cascade");
+
+			LongSet processed = new LongSet();
+			LongQueue queue = new LongQueue();
+
+			before = allocatedBytes();
+
+			for (int pass = 0; pass < passes; pass++) {
+				processed.clear();
+				queue.clear();
+
+				ids.forEach(queue::add);
+
+				while (!queue.isEmpty()) {
+					processed.add(queue.poll());
+				}
+			}
+
+			System.out.println("PRIMITIVE BOOKKEEPING:" + (allocatedBytes() - before) / passes + "B/cascade");
+
+			Collections.shuffle(people);
+
+			before = allocatedBytes();
+
+			for (int opinion = 0; opinion < opinionCount; opinion++) {
+				smart.setOpinion(people.get(opinion), getOpinion(opinion));
+			}
+
+			System.out.println("DIRTY CASCADE:" + (allocatedBytes() - before) / opinionCount + "B/cascade");
+
+			tx.failure();
+		}
+	}
+
 	private void insertAndCompareConnectionMap(
 			Map<Node, Node> baseConnectionMap,
 			List<Pair<Node, Node>> authorOpinions,
@@ -228,6 +637,36 @@ public class TraversalComparer {
 		shuffledInsert.forEach((key, value) ->
 				assertTrue(baseConnectionMap.get(key).equals(value))
 		);
+
+		// maintained influence matches a full count
+		shuffledInsert.keySet().forEach(node ->
+				assertEquals(Traversals.measureInfluence(nav, node), nav.getInfluence(node))
+		);
+
+		// resolved authors match a walk up the connections
+		shuffledInsert.keySet().forEach(node -> {
+			Node author = node;
+
+			while (!nav.isOpinion(shuffledInsert.get(author))) {
+				author = shuffledInsert.get(author);
+			}
+
+			assertEquals(Optional.of(author), nav.getResolvedAuthor(node));
+		});
+
+		// the index holds exactly the authors, most influential first
+		List<Node> authors = shuffledInsert.entrySet().stream()
+				.filter(entry -> nav.isOpinion(entry.getValue()))
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+		List<Node> top = influenceIndex.top(neo4j.getGraphDatabaseService(), authors.size() + 1);
+
+		assertEquals(authors.size(), top.size());
+		assertTrue(top.containsAll(authors));
+
+		for (int i = 1; i < top.size(); i++) {
+			assertTrue(nav.getInfluence(top.get(i - 1)) >= nav.getInfluence(top.get(i)));
+		}
 	}
 
 	private static void clearConnected() {
@@ -252,6 +691,15 @@ public class TraversalComparer {
 				));
 	}
 
+	private static String describe(Node n) {
+		return (nav.isOpinion(n) ? "opinion " : "person ") + n.getProperty("id");
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
 	private Node getOpinion(int id) {
 		return neo4j.getGraphDatabaseService().findNode(Label.label("Opinion"), "id", id);
 	}
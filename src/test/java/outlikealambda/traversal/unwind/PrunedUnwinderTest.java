@@ -0,0 +1,219 @@
+package outlikealambda.traversal.unwind;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.TestUtils;
+import outlikealambda.traversal.walk.CleanBlazer;
+import outlikealambda.traversal.walk.Navigator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrunedUnwinderTest {
+	@ClassRule
+	public static Neo4jRule neo4j = new Neo4jRule();
+
+	private static Function<Integer, Node> getPerson = TestUtils.getPerson(neo4j);
+
+	private static int topicId = 64;
+
+	private static Navigator nav = new Navigator(topicId);
+
+	private static Unwinder fixture = new PrunedUnwinder(nav);
+
+	@Test
+	public void unwindSkipsNodesWhichCantChange() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			String e = "e";
+			String f = "f";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addPerson(e, 5)
+					.addPerson(f, 6)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(a, b, 0)
+					.connectRanked(b, a, 0)
+					.connectRanked(c, a, 0)
+					.connectRanked(c, b, 1)
+					.connectRanked(d, b, 0)
+					.connectRanked(e, b, 0)
+					.connectManual(e, a)
+					.connectRanked(f, d, 0)
+					.connectRanked(f, b, 1)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			List<Node> people = Arrays.asList(
+					getPerson.apply(1),
+					getPerson.apply(2),
+					getPerson.apply(3),
+					getPerson.apply(4),
+					getPerson.apply(5),
+					getPerson.apply(6));
+
+			nav.beginCascade();
+			new CleanBlazer(nav).rebuild(people);
+			nav.endCascade();
+
+			Node aNode = people.get(0);
+			Node bNode = people.get(1);
+			Node cNode = people.get(2);
+			Node dNode = people.get(3);
+			Node eNode = people.get(4);
+			Node fNode = people.get(5);
+
+			Set<Node> cleared = fixture.unwind(bNode);
+
+			// a is an author, c is connected ahead of b, e has a manual target
+			assertTrue(nav.isConnected(aNode));
+			assertTrue(nav.isConnected(cNode));
+			assertTrue(nav.isConnected(eNode));
+
+			// f is connected ahead of b, but through d, which depends on b
+			assertFalse(nav.isConnected(bNode));
+			assertFalse(nav.isConnected(dNode));
+			assertFalse(nav.isConnected(fNode));
+
+			assertEquals(3, cleared.size());
+			assertTrue(cleared.contains(bNode));
+			assertTrue(cleared.contains(dNode));
+			assertTrue(cleared.contains(fNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void unwindCollectsDisjointSources() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.connectRanked(b, a, 0)
+					.connectRanked(c, b, 0)
+					.connectRanked(d, c, 0)
+					.connectRanked(d, a, 1)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+
+			Set<Node> cleared = fixture.unwind(aNode);
+
+			assertEquals(4, cleared.size());
+			assertTrue(cleared.contains(aNode));
+			assertTrue(cleared.contains(bNode));
+			assertTrue(cleared.contains(cNode));
+			assertTrue(cleared.contains(dNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void unwindAndBlazeMatchesBasic() {
+		List<Long> basic = unwindAndBlaze(new BasicUnwinder(nav));
+		List<Long> pruned = unwindAndBlaze(fixture);
+
+		assertEquals(basic, pruned);
+	}
+
+	/**
+	 * Moves sr's connection in the graph from BasicUnwinderTest.unwindAndBlaze1,
+	 * and returns the id of each person's target afterwards, -1 if disjoint
+	 */
+	private static List<Long> unwindAndBlaze(Unwinder unwinder) {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String klb = "klb";
+			String mb = "mb";
+			String ng = "ng";
+			String sr = "sr";
+			String ll = "ll";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(klb, 1)
+					.addPerson(mb, 2)
+					.addPerson(ng, 3)
+					.addPerson(sr, 4)
+					.addPerson(ll, 5)
+					.addOpinion(o, 0)
+					.connectAuthored(klb, o)
+					.connectRanked(klb, sr, 0)
+					.connectRanked(klb, ll, 1)
+					.connectRanked(mb, sr, 0)
+					.connectRanked(mb, ng, 1)
+					.connectRanked(mb, ll, 2)
+					.connectRanked(mb, klb, 3)
+					.connectRanked(ng, ll, 0)
+					.connectRanked(ng, sr, 1)
+					.connectRanked(sr, ng, 0)
+					.connectRanked(sr, klb, 1)
+					.connectRanked(sr, ll, 2)
+					.connectRanked(ll, ng, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			List<Node> people = Arrays.asList(
+					getPerson.apply(1),
+					getPerson.apply(2),
+					getPerson.apply(3),
+					getPerson.apply(4),
+					getPerson.apply(5));
+
+			CleanBlazer blazer = new CleanBlazer(nav);
+
+			nav.beginCascade();
+			blazer.rebuild(people);
+			nav.endCascade();
+
+			Node srNode = people.get(3);
+
+			nav.setTarget(srNode, people.get(4));
+			unwinder.unwind(srNode).forEach(blazer::go);
+
+			List<Long> targets = new ArrayList<>();
+
+			for (Node person : people) {
+				targets.add(nav.isConnected(person) ? (long) nav.getConnectedTarget(person).getProperty("id") : -1L);
+			}
+
+			tx.failure();
+
+			return targets;
+		}
+	}
+}
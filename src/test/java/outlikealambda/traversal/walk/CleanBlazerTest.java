@@ -6,13 +6,18 @@ import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.Relationships;
 import outlikealambda.traversal.TestUtils;
 import outlikealambda.utils.Traversals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.function.Function;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class CleanBlazerTest {
@@ -253,6 +258,65 @@ public class CleanBlazerTest {
 		}
 	}
 
+	@Test
+	public void invalidateLastsForTheCascade() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(b, a, 0)
+					.connectRanked(c, b, 0)
+					.connectRanked(d, c, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+
+			fixture.go(dNode);
+
+			nav.beginCascade();
+			nav.invalidate();
+
+			assertFalse(nav.isConnected(bNode));
+			assertFalse(nav.isDisjoint(bNode));
+			assertEquals(-1, nav.getConnectedIndex(bNode));
+
+			// recomputed as the walk reaches them
+			fixture.go(cNode);
+
+			assertTrue(nav.isConnected(bNode));
+			assertTrue(nav.isConnected(cNode));
+			assertFalse(nav.isConnected(dNode));
+
+			nav.endCascade();
+
+			// wasn't walked, so kept its state
+			assertTrue(nav.isConnected(dNode));
+			assertEquals(cNode, nav.getConnectedTarget(dNode));
+			assertEquals(bNode, nav.getConnectedTarget(cNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void invalidateNeedsACascade() {
+		nav.invalidate();
+	}
+
 	/**
 	 * this is non-deterministic with the ConnectivityAdjuster
 	 */
@@ -314,4 +378,68 @@ public class CleanBlazerTest {
 			tx.failure();
 		}
 	}
+
+	/**
+	 * The ids Blazer walks are the streamed targets, in the same order,
+	 * whichever way the node walks and its ranked list is encoded
+	 */
+	@Test
+	public void walkableIdsMatchWalkableTargets() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(a, b, 0)
+					.connectManual(b, c)
+					.connectRanked(b, d, 0)
+					.connectRanked(c, d, 2)
+					.connectRanked(c, a, 0)
+					.connectRanked(c, b, 1)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node cNode = getPerson.apply(3);
+			List<Node> people = Arrays.asList(
+					getPerson.apply(1),
+					getPerson.apply(2),
+					cNode,
+					getPerson.apply(4));
+
+			WalkTargets targets = new WalkTargets();
+
+			people.forEach(person -> assertWalkableIds(nav, person, targets));
+
+			Relationships.toArrayEncoding(cNode);
+			assertWalkableIds(nav, cNode, targets);
+
+			CompactNavigator compact = CompactNavigator.load(neo4j.getGraphDatabaseService(), topicId);
+			people.forEach(person -> assertWalkableIds(compact, person, targets));
+
+			tx.failure();
+		}
+	}
+
+	private static void assertWalkableIds(Navigator navigator, Node n, WalkTargets targets) {
+		navigator.loadWalkableTargets(n, targets);
+
+		List<Long> ids = new ArrayList<>();
+		while (targets.hasNext()) {
+			ids.add(targets.next());
+		}
+
+		assertEquals(
+				navigator.getWalkableTargets(n).map(Node::getId).collect(toList()),
+				ids);
+	}
 }
@@ -0,0 +1,142 @@
+package outlikealambda.traversal.walk;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.TestUtils;
+import outlikealambda.utils.Traversals;
+
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactNavigatorTest {
+	@ClassRule
+	public static Neo4jRule neo4j = new Neo4jRule();
+
+	private static Function<Integer, Node> getPerson = TestUtils.getPerson(neo4j);
+
+	private static int topicId = 64;
+
+	// reads straight from the store, to check what the compact navigator wrote
+	private static Navigator store = new Navigator(topicId);
+
+	@Test
+	public void walksInRankOrder() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.connectRanked(a, d, 2)
+					.connectRanked(a, b, 0)
+					.connectRanked(a, c, 1)
+					.connectManual(d, a)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+
+			CompactNavigator fixture = CompactNavigator.load(neo4j.getGraphDatabaseService(), topicId);
+
+			assertEquals(
+					store.getWalkableTargets(aNode).collect(toList()),
+					fixture.getWalkableTargets(aNode).collect(toList()));
+
+			assertEquals(3, fixture.getWalkableTargets(aNode).count());
+			assertEquals(bNode, fixture.getWalkableTargets(aNode).findFirst().get());
+
+			// d is manual, so only walks a
+			assertEquals(aNode, fixture.getWalkableTargets(dNode).findFirst().get());
+			assertEquals(1, fixture.getWalkableTargets(dNode).count());
+
+			// a is ranked by no one, but manually targeted by d
+			assertEquals(dNode, fixture.getUpstream(aNode).findFirst().get());
+			assertEquals(aNode, fixture.getUpstream(cNode).findFirst().get());
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void blazeWritesThrough() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			// while all nodes are ranked to this one, none should follow
+			// that path, because it's not connected
+			String disjoint = "disjoint";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addPerson(disjoint, 5)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(b, a, 1)
+					.connectManual(c, b)
+					.connectRanked(d, c, 1)
+					.connectRanked(a, disjoint, 0)
+					.connectRanked(b, disjoint, 0)
+					.connectRanked(c, disjoint, 0)
+					.connectRanked(d, disjoint, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+			Node disjointNode = getPerson.apply(5);
+
+			CompactNavigator fixture = CompactNavigator.load(neo4j.getGraphDatabaseService(), topicId);
+
+			new DirtyBlazer(fixture).go(dNode);
+
+			for (Navigator nav : new Navigator[]{ fixture, store }) {
+				assertEquals(aNode, Traversals.follow(nav, aNode));
+				assertEquals(aNode, Traversals.follow(nav, bNode));
+				// should follow a manual connection
+				assertEquals(aNode, Traversals.follow(nav, cNode));
+				assertEquals(aNode, Traversals.follow(nav, dNode));
+
+				assertEquals(4, Traversals.measureInfluence(nav, aNode));
+
+				assertTrue(nav.isDisjoint(disjointNode));
+			}
+
+			// and back again, once the author is gone
+			fixture.setOpinion(aNode, null);
+			new DirtyBlazer(fixture).go(aNode);
+
+			for (Navigator nav : new Navigator[]{ fixture, store }) {
+				assertFalse(nav.isConnected(aNode));
+				assertFalse(nav.isConnected(dNode));
+				assertTrue(nav.isDisjoint(dNode));
+			}
+
+			tx.failure();
+		}
+	}
+}
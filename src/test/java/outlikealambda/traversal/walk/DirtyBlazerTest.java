@@ -6,13 +6,17 @@ import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.Relationships;
 import outlikealambda.traversal.TestUtils;
 import outlikealambda.utils.Traversals;
 
 import java.util.Arrays;
+import java.util.Optional;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class DirtyBlazerTest {
@@ -240,4 +244,187 @@ public class DirtyBlazerTest {
 			tx.failure();
 		}
 	}
+
+	@Test
+	public void connectionStateIsPerTopicAndKeptInPlace() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(b, c, 0)
+					.connectRanked(b, a, 1)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+
+			fixture.go(bNode);
+
+			assertTrue(nav.isConnected(bNode));
+			assertTrue(nav.isDisjoint(cNode));
+
+			// c was tried first, so a is second in b's walk order
+			assertEquals(1, nav.getConnectedIndex(bNode));
+
+			long connection = nav.getConnectionOut(bNode).getId();
+
+			fixture.go(bNode);
+
+			assertEquals(aNode, nav.getConnectedTarget(bNode));
+			assertEquals(connection, nav.getConnectionOut(bNode).getId());
+
+			// nothing has been walked in another topic
+			Navigator other = new Navigator(topicId + 1);
+			assertFalse(other.isConnected(bNode));
+			assertFalse(other.isDisjoint(cNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void statesAreWrittenWhenTheCascadeEnds() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(b, a, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+
+			Navigator staging = new Navigator(topicId);
+
+			staging.beginCascade();
+
+			staging.setDisjoint(bNode);
+			staging.setConnected(bNode, aNode, 0);
+
+			assertTrue(staging.isConnected(bNode));
+			assertEquals(null, staging.getConnectedOut(bNode));
+
+			staging.endCascade();
+
+			assertEquals(aNode, staging.getConnectedTarget(bNode));
+			assertEquals(0, staging.getConnectedIndex(bNode));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void longChainsDoNotOverflow() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			int length = 20000;
+
+			Node opinion = neo4j.getGraphDatabaseService().createNode(Nodes.Labels.OPINION);
+			Node author = neo4j.getGraphDatabaseService().createNode(Nodes.Labels.PERSON);
+			author.createRelationshipTo(opinion, Relationships.Types.authored(topicId));
+
+			// each person ranks the next, ending at the author
+			Node current = author;
+			for (int i = 1; i < length; i++) {
+				Node next = neo4j.getGraphDatabaseService().createNode(Nodes.Labels.PERSON);
+				next.createRelationshipTo(current, Relationships.Types.ranked())
+						.setProperty(Relationships.RANK, 0L);
+				current = next;
+			}
+
+			fixture.go(current);
+
+			assertEquals(author, Traversals.follow(nav, current));
+			assertEquals(length, Traversals.measureInfluence(nav, author));
+
+			tx.failure();
+		}
+	}
+
+	@Test
+	public void influenceFollowsConnections() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			String z = "z";
+			String o = "opinion";
+			String o2 = "opinion2";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addPerson(z, 5)
+					.addOpinion(o, 0)
+					.addOpinion(o2, 1)
+					.connectAuthored(a, o)
+					.connectRanked(b, a, 0)
+					.connectRanked(c, b, 0)
+					.connectRanked(d, c, 0)
+					.connectRanked(d, z, 1)
+					.connectRanked(z, a, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+			Node zNode = getPerson.apply(5);
+
+			fixture.go(aNode);
+
+			assertEquals(5, nav.getInfluence(aNode));
+			assertEquals(3, nav.getInfluence(bNode));
+			assertEquals(2, nav.getInfluence(cNode));
+			assertEquals(1, nav.getInfluence(zNode));
+
+			// z writes their own opinion, leaving a's path; only z stops counting toward a
+			nav.setOpinion(zNode, neo4j.getGraphDatabaseService().findNode(Label.label("Opinion"), "id", 1));
+			fixture.go(zNode);
+
+			assertEquals(4, nav.getInfluence(aNode));
+			assertEquals(1, nav.getInfluence(zNode));
+
+			// b picks z, taking c and d along
+			nav.setTarget(bNode, zNode);
+			fixture.go(bNode);
+
+			assertEquals(1, nav.getInfluence(aNode));
+			assertEquals(4, nav.getInfluence(zNode));
+			assertEquals(3, nav.getInfluence(bNode));
+			assertEquals(1, nav.getInfluence(dNode));
+			assertEquals(Traversals.measureInfluence(nav, aNode), nav.getInfluence(aNode));
+
+			// c and d were never reconnected, but their author moved with b
+			assertEquals(Optional.of(zNode), nav.getResolvedAuthor(dNode));
+			assertEquals(Optional.of(zNode), nav.getResolvedAuthor(cNode));
+			assertEquals(Optional.of(aNode), nav.getResolvedAuthor(aNode));
+			assertEquals(Traversals.measureInfluence(nav, zNode), nav.getInfluence(zNode));
+
+			tx.failure();
+		}
+	}
 }
@@ -0,0 +1,176 @@
+package outlikealambda.traversal.walk;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.junit.Neo4jRule;
+import outlikealambda.traversal.Nodes;
+import outlikealambda.traversal.TestUtils;
+import outlikealambda.traversal.TopicEncoding;
+import outlikealambda.traversal.TopicRelationships;
+import outlikealambda.utils.Traversals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KernelNavigatorTest {
+	@ClassRule
+	public static Neo4jRule neo4j = new Neo4jRule();
+
+	private static Function<Integer, Node> getPerson = TestUtils.getPerson(neo4j);
+
+	private static int topicId = 64;
+
+	// reads through the core API, to check the kernel reads against
+	private static Navigator store = new Navigator(topicId);
+
+	@Test
+	public void readsMatchTheStore() {
+		for (TopicEncoding encoding : TopicEncoding.values()) {
+			try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+				String a = "a";
+				String b = "b";
+				String c = "c";
+				String d = "d";
+				String o = "opinion";
+
+				String create = TestUtils.createWalkable(topicId)
+						.addPerson(a, 1)
+						.addPerson(b, 2)
+						.addPerson(c, 3)
+						.addPerson(d, 4)
+						.addOpinion(o, 0)
+						.addTopic(topicId)
+						.connectAuthored(a, o)
+						.connectRanked(b, a, 0)
+						.connectManual(c, b)
+						.connectRanked(d, c, 1)
+						.connectRanked(d, b, 0)
+						.build();
+
+				neo4j.getGraphDatabaseService().execute(create);
+
+				// the builder writes PER_TYPE; move the people over to the encoding
+				TopicRelationships from = new TopicRelationships(TopicEncoding.PER_TYPE, topicId);
+				TopicRelationships to = new TopicRelationships(encoding, topicId);
+
+				if (encoding != TopicEncoding.PER_TYPE) {
+					neo4j.getGraphDatabaseService().findNodes(Nodes.Labels.PERSON)
+							.forEachRemaining(person -> from.reencodeOut(person, to));
+				}
+
+				neo4j.getGraphDatabaseService().findNode(Nodes.Labels.TOPIC, Nodes.Fields.ID, (long) topicId)
+						.setProperty(TopicEncoding.KEY, encoding.name());
+
+				Navigator storeReads = new Navigator(topicId);
+				KernelNavigator fixture = KernelNavigator.create(neo4j.getGraphDatabaseService(), topicId);
+
+				new DirtyBlazer(storeReads).go(getPerson.apply(4));
+
+				List<Node> nodes = new ArrayList<>(Arrays.asList(
+						getPerson.apply(1),
+						getPerson.apply(2),
+						getPerson.apply(3),
+						getPerson.apply(4)));
+				nodes.add(neo4j.getGraphDatabaseService().findNode(Nodes.Labels.OPINION, Nodes.Fields.ID, 0));
+
+				WalkTargets targets = new WalkTargets();
+
+				for (Node n : nodes) {
+					assertEquals(storeReads.isOpinion(n), fixture.isOpinion(n));
+					assertEquals(storeReads.isAuthor(n), fixture.isAuthor(n));
+					assertEquals(storeReads.isConnected(n), fixture.isConnected(n));
+					assertEquals(storeReads.isDisjoint(n), fixture.isDisjoint(n));
+
+					if (!storeReads.isOpinion(n)) {
+						fixture.loadWalkableTargets(n, targets);
+
+						List<Long> ids = new ArrayList<>();
+						while (targets.hasNext()) {
+							ids.add(targets.next());
+						}
+
+						assertEquals(storeReads.getWalkableTargets(n).map(Node::getId).collect(toList()), ids);
+					}
+				}
+
+				tx.failure();
+			}
+		}
+	}
+
+	@Test
+	public void blazeMatchesTheStore() {
+		try (Transaction tx = neo4j.getGraphDatabaseService().beginTx()) {
+			String a = "a";
+			String b = "b";
+			String c = "c";
+			String d = "d";
+			// while all nodes are ranked to this one, none should follow
+			// that path, because it's not connected
+			String disjoint = "disjoint";
+			String o = "opinion";
+
+			String create = TestUtils.createWalkable(topicId)
+					.addPerson(a, 1)
+					.addPerson(b, 2)
+					.addPerson(c, 3)
+					.addPerson(d, 4)
+					.addPerson(disjoint, 5)
+					.addOpinion(o, 0)
+					.connectAuthored(a, o)
+					.connectRanked(b, a, 1)
+					.connectManual(c, b)
+					.connectRanked(d, c, 1)
+					.connectRanked(a, disjoint, 0)
+					.connectRanked(b, disjoint, 0)
+					.connectRanked(c, disjoint, 0)
+					.connectRanked(d, disjoint, 0)
+					.build();
+
+			neo4j.getGraphDatabaseService().execute(create);
+
+			Node aNode = getPerson.apply(1);
+			Node bNode = getPerson.apply(2);
+			Node cNode = getPerson.apply(3);
+			Node dNode = getPerson.apply(4);
+			Node disjointNode = getPerson.apply(5);
+
+			KernelNavigator fixture = KernelNavigator.create(neo4j.getGraphDatabaseService(), topicId);
+
+			new DirtyBlazer(fixture).go(dNode);
+
+			for (Navigator nav : new Navigator[]{ fixture, store }) {
+				assertEquals(aNode, Traversals.follow(nav, aNode));
+				assertEquals(aNode, Traversals.follow(nav, bNode));
+				// should follow a manual connection
+				assertEquals(aNode, Traversals.follow(nav, cNode));
+				assertEquals(aNode, Traversals.follow(nav, dNode));
+
+				assertEquals(4, Traversals.measureInfluence(nav, aNode));
+
+				assertTrue(nav.isDisjoint(disjointNode));
+			}
+
+			// and back again, once the author is gone
+			fixture.setOpinion(aNode, null);
+			new DirtyBlazer(fixture).go(aNode);
+
+			for (Navigator nav : new Navigator[]{ fixture, store }) {
+				assertFalse(nav.isConnected(aNode));
+				assertFalse(nav.isConnected(dNode));
+				assertTrue(nav.isDisjoint(dNode));
+			}
+
+			tx.failure();
+		}
+	}
+}
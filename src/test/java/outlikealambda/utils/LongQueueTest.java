@@ -0,0 +1,28 @@
+package outlikealambda.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LongQueueTest {
+	@Test
+	public void queueIsFirstInFirstOut() {
+		LongQueue queue = new LongQueue(2);
+
+		// wrap the ring before it has to grow
+		queue.add(1);
+		queue.add(2);
+		assertEquals(1, queue.poll());
+		queue.add(3);
+		queue.add(4);
+		queue.add(5);
+
+		assertEquals(4, queue.size());
+		assertEquals(2, queue.poll());
+		assertEquals(3, queue.poll());
+		assertEquals(4, queue.poll());
+		assertEquals(5, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+}
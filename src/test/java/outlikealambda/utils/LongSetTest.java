@@ -0,0 +1,65 @@
+package outlikealambda.utils;
+
+import org.junit.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongSetTest {
+	@Test
+	public void addsOnce() {
+		LongSet set = new LongSet();
+
+		assertTrue(set.add(0));
+		assertTrue(set.add(42));
+		assertFalse(set.add(42));
+
+		assertEquals(2, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(42));
+		assertFalse(set.contains(7));
+	}
+
+	@Test
+	public void growsPastItsInitialSize() {
+		LongSet set = new LongSet(2);
+
+		LongStream.range(0, 10000).forEach(set::add);
+
+		assertEquals(10000, set.size());
+		LongStream.range(0, 10000).forEach(i -> assertTrue(set.contains(i)));
+		assertFalse(set.contains(10000));
+	}
+
+	@Test
+	public void clearKeepsItUsable() {
+		LongSet set = new LongSet();
+
+		LongStream.range(0, 100).forEach(set::add);
+		set.clear();
+
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(5));
+		assertTrue(set.add(5));
+	}
+
+	@Test
+	public void clearAfterGrowingForgetsEverything() {
+		LongSet set = new LongSet();
+
+		LongStream.range(0, 10000).forEach(set::add);
+		set.clear();
+
+		assertTrue(set.add(3));
+		assertTrue(set.add(9999));
+		set.clear();
+
+		assertTrue(set.isEmpty());
+		LongStream.range(0, 10000).forEach(i -> assertFalse(set.contains(i)));
+		LongStream.range(0, 10000).forEach(i -> assertTrue(set.add(i)));
+		assertEquals(10000, set.size());
+	}
+}
@@ -8,6 +8,8 @@ import org.neo4j.harness.junit.Neo4jRule;
 import outlikealambda.traversal.TestUtils;
 import outlikealambda.traversal.walk.Navigator;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
@@ -53,6 +55,7 @@ public class TraversalsTest {
 			Node bNode = getPerson.apply(2);
 			Node cNode = getPerson.apply(3);
 			Node dNode = getPerson.apply(4);
+			Node eNode = getPerson.apply(5);
 
 			assertEquals(aNode, Traversals.follow(nav, aNode));
 			assertEquals(aNode, Traversals.follow(nav, bNode));
@@ -64,6 +67,16 @@ public class TraversalsTest {
 			assertEquals(1, Traversals.measureInfluence(nav, cNode));
 			assertEquals(1, Traversals.measureInfluence(nav, dNode));
 
+			// counted together, in any order, gives the same answers
+			Map<Node, Long> together = Traversals.measureInfluence(nav, Arrays.asList(dNode, aNode, cNode, bNode, eNode));
+
+			assertEquals(5, together.size());
+			assertEquals(4L, (long) together.get(aNode));
+			assertEquals(3L, (long) together.get(bNode));
+			assertEquals(1L, (long) together.get(cNode));
+			assertEquals(1L, (long) together.get(dNode));
+			assertEquals(1L, (long) together.get(eNode));
+
 			tx.failure();
 		}
 	}